@@ -0,0 +1,111 @@
+package com.github.myzhan.locust4j;
+
+import java.util.concurrent.TimeUnit;
+
+import com.github.myzhan.locust4j.stats.Stats;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Throughput of recordSuccess and recordFailure with the stats thread running, from 1 to 64 recording threads.
+ *
+ * @author myzhan
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class BenchmarkRecord {
+
+    private final Locust locust = Locust.getInstance();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Stats.getInstance().start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Stats.getInstance().stop();
+    }
+
+    private void record() {
+        locust.recordSuccess("http", "success", 10, 100);
+    }
+
+    private void recordFailure() {
+        locust.recordFailure("http", "failure", 10, "Internal Server Error");
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void recordSuccess1() {
+        record();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordSuccess4() {
+        record();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void recordSuccess16() {
+        record();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void recordSuccess64() {
+        record();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void recordFailure1() {
+        recordFailure();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordFailure4() {
+        recordFailure();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void recordFailure16() {
+        recordFailure();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void recordFailure64() {
+        recordFailure();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+            .include(BenchmarkRecord.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .forks(1)
+            .warmupIterations(1)
+            .measurementIterations(2)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
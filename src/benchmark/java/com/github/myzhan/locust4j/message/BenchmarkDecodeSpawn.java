@@ -0,0 +1,102 @@
+package com.github.myzhan.locust4j.message;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Cost of decoding a spawn message of locust 2.x with 10 and 1000 user classes, and parsed_options as sent by the
+ * master. The data is either decoded completely, or only the fields read by the runner are decoded.
+ *
+ * @author myzhan
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class BenchmarkDecodeSpawn {
+
+    @Param({"10", "1000"})
+    public int userClasses;
+
+    private byte[] bytes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+        packer.packArrayHeader(3);
+        packer.packString("spawn");
+        packer.packMapHeader(5);
+        packer.packString("timestamp").packDouble(1700000000.123456);
+        packer.packString("user_classes_count").packMapHeader(userClasses);
+        for (int i = 0; i < userClasses; i++) {
+            packer.packString("UserClass" + i).packInt(i % 100 + 1);
+        }
+        packer.packString("host").packString("https://www.github.com");
+        packer.packString("stop_timeout").packNil();
+        packer.packString("parsed_options").packMapHeader(16);
+        packer.packString("locustfile").packString("locustfile.py");
+        packer.packString("num_users").packInt(userClasses * 50);
+        packer.packString("spawn_rate").packDouble(10.5);
+        packer.packString("run_time").packLong(3600L);
+        packer.packString("headless").packBoolean(true);
+        packer.packString("master").packBoolean(true);
+        packer.packString("master_bind_port").packInt(5557);
+        packer.packString("expect_workers").packInt(8);
+        packer.packString("tags").packArrayHeader(3).packString("smoke").packString("api").packString("login");
+        packer.packString("exclude_tags").packNil();
+        packer.packString("user_classes").packArrayHeader(userClasses);
+        for (int i = 0; i < userClasses; i++) {
+            packer.packString("UserClass" + i);
+        }
+        packer.packString("percentiles").packArrayHeader(3).packDouble(0.5).packDouble(0.95).packDouble(0.99);
+        packer.packString("csv_prefix").packNil();
+        packer.packString("loglevel").packString("INFO");
+        packer.packString("reset_stats").packBoolean(false);
+        packer.packString("web_port").packInt(8089);
+        packer.packString("master-node");
+        packer.close();
+        bytes = packer.toByteArray();
+    }
+
+    @Benchmark
+    public Map<String, Object> decodeData() throws IOException {
+        return new Message(bytes).getData();
+    }
+
+    @Benchmark
+    public void decodeFields(Blackhole blackhole) throws IOException {
+        Message message = new Message(bytes);
+        blackhole.consume(message.getField("user_classes_count"));
+        blackhole.consume(message.getField("host"));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+            .include(BenchmarkDecodeSpawn.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .forks(1)
+            .warmupIterations(1)
+            .measurementIterations(2)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.myzhan.locust4j.stats;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.github.myzhan.locust4j.message.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Cost of reporting and packing the stats message with 10, 1000 and 50000 entries, every entry has a few response
+ * times. The entries are either serialized to maps and packed by the visitor, or packed straight from the entries.
+ *
+ * @author myzhan
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class BenchmarkCollectReportData {
+
+    @Param({"10", "1000", "50000"})
+    public int entries;
+
+    private Stats stats;
+    private String[] names;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        stats = new Stats();
+        stats.setMaxEntries(entries);
+        names = new String[entries];
+        for (int i = 0; i < entries; i++) {
+            names[i] = "/api/" + i;
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void record() {
+        for (int i = 0; i < entries; i++) {
+            stats.logRequest("http", names[i], 10 + i % 50, 100);
+            stats.logRequest("http", names[i], 200 + i % 500, 100);
+        }
+    }
+
+    @Benchmark
+    public byte[] serializeMaps() throws IOException {
+        return new Message("stats", stats.collectReportData(), -1, "node").getBytes();
+    }
+
+    @Benchmark
+    public byte[] packEntries() throws IOException {
+        return new Message("stats", stats.collectPackedReportData(), -1, "node").getBytes();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+            .include(BenchmarkCollectReportData.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .forks(1)
+            .warmupIterations(1)
+            .measurementIterations(2)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
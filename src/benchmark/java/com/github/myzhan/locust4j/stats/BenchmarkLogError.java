@@ -0,0 +1,69 @@
+package com.github.myzhan.locust4j.stats;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Cost of Stats.logError with a few distinct errors, or with a request ID in every error message.
+ *
+ * @author myzhan
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class BenchmarkLogError {
+
+    private static final int MESSAGES = 1 << 16;
+
+    @Param({"low", "high"})
+    public String cardinality;
+
+    private final String[] errors = new String[MESSAGES];
+    private Stats stats;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (int i = 0; i < MESSAGES; i++) {
+            int id = "low".equals(cardinality) ? i % 8 : i;
+            errors[i] = "request " + id + " failed: connection reset";
+        }
+        stats = new Stats();
+    }
+
+    @Setup(Level.Iteration)
+    public void report() {
+        stats.collectReportData();
+    }
+
+    @Benchmark
+    public void logError() {
+        stats.logError("http", "name", errors[index++ & (MESSAGES - 1)]);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+            .include(BenchmarkLogError.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .forks(1)
+            .warmupIterations(1)
+            .measurementIterations(2)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.myzhan.locust4j.stats;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Cost of StatsEntry.log with log-normal response times, a median of 20ms and a long tail up to seconds.
+ *
+ * @author myzhan
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class BenchmarkStatsEntry {
+
+    private static final int SAMPLES = 1 << 16;
+
+    private final long[] responseTimes = new long[SAMPLES];
+    private final long[] responseTimesNanos = new long[SAMPLES];
+    private StatsEntry entry;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < SAMPLES; i++) {
+            double millis = Math.exp(Math.log(20) + random.nextGaussian());
+            responseTimes[i] = (long)millis;
+            responseTimesNanos[i] = (long)(millis * 1000000);
+        }
+        entry = new StatsEntry("name", "method");
+        entry.reset();
+    }
+
+    @Benchmark
+    public void log() {
+        entry.log(responseTimes[index++ & (SAMPLES - 1)], 100);
+    }
+
+    @Benchmark
+    public void logNanos() {
+        entry.logNanos(responseTimesNanos[index++ & (SAMPLES - 1)], 100);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+            .include(BenchmarkStatsEntry.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .forks(1)
+            .warmupIterations(1)
+            .measurementIterations(2)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
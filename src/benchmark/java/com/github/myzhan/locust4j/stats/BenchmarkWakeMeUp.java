@@ -0,0 +1,57 @@
+package com.github.myzhan.locust4j.stats;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Producer-side cost of waking up the stats thread, which every recordSuccess and recordFailure pays.
+ *
+ * @author myzhan
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class BenchmarkWakeMeUp {
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Stats.getInstance().start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Stats.getInstance().stop();
+    }
+
+    @Benchmark
+    public void wakeMeUp() {
+        Stats.getInstance().wakeMeUp();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[] {1, 4, 16, 64}) {
+            Options opt = new OptionsBuilder()
+                .include(BenchmarkWakeMeUp.class.getSimpleName())
+                .forks(1)
+                .threads(threads)
+                .warmupIterations(1)
+                .measurementIterations(2)
+                .build();
+
+            new Runner(opt).run();
+        }
+    }
+}
@@ -71,7 +71,7 @@ public abstract class AbstractTask implements Runnable {
             onStart();
         } catch (Exception ex) {
             logger.error("Exception when executing onStart", ex);
-            Locust.getInstance().recordFailure("onStart", "error", 0, ex.getMessage());
+            Locust.getInstance().recordFailure("onStart", "error", 0, ex);
             return;
         }
         try {
@@ -99,7 +99,7 @@ public abstract class AbstractTask implements Runnable {
                     return;
                 } catch (Exception ex) {
                     logger.error("Unknown exception when executing the task", ex);
-                    Locust.getInstance().recordFailure("unknown", "error", 0, ex.getMessage());
+                    Locust.getInstance().recordFailure("unknown", "error", 0, ex);
                 } catch (Error err) {
                     // Error happens, print out the stacktrace then rethrow it to the thread pool.
                     // This task will be discarded by the thread pool.
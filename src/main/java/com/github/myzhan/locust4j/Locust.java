@@ -4,14 +4,21 @@ import com.github.myzhan.locust4j.ratelimit.AbstractRateLimiter;
 import com.github.myzhan.locust4j.ratelimit.StableRateLimiter;
 import com.github.myzhan.locust4j.rpc.Client;
 import com.github.myzhan.locust4j.rpc.ZeromqClient;
+import com.github.myzhan.locust4j.runtime.MessageHandler;
 import com.github.myzhan.locust4j.runtime.Runner;
-import com.github.myzhan.locust4j.stats.RequestFailure;
-import com.github.myzhan.locust4j.stats.RequestSuccess;
+import com.github.myzhan.locust4j.stats.ErrorNormalizer;
+import com.github.myzhan.locust4j.stats.NameNormalizer;
+import com.github.myzhan.locust4j.stats.OverflowPolicy;
+import com.github.myzhan.locust4j.stats.RequestTimer;
 import com.github.myzhan.locust4j.stats.Stats;
+import com.github.myzhan.locust4j.stats.StatsHandle;
 
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 
 import com.github.myzhan.locust4j.utils.Utils;
 import org.slf4j.Logger;
@@ -34,6 +41,10 @@ public class Locust {
     private boolean rateLimitEnabled;
     private AbstractRateLimiter rateLimiter;
     private Runner runner;
+    /**
+     * Handlers of custom messages, registered to the runner when it's created.
+     */
+    private final Map<String, MessageHandler> messageHandlers = new LinkedHashMap<>();
 
     private Locust() {
 
@@ -131,6 +142,231 @@ public class Locust {
         this.verbose = v;
     }
 
+    /**
+     * Let every thread aggregate its own records, instead of sending them to a single stats thread.
+     * Recommended when a worker records hundreds of thousands of requests per second.
+     *
+     * @param striped enable the striped mode or not
+     * @since 2.3.0
+     */
+    public void setStripedStats(boolean striped) {
+        Stats.getInstance().setStriped(striped);
+    }
+
+    /**
+     * Records wait in a bounded buffer for the stats thread, set what to do with them when the buffer is full.
+     * Defaults to {@link OverflowPolicy#AGGREGATE}, or the LOCUST_STATS_OVERFLOW_POLICY environment variable.
+     *
+     * @param overflowPolicy block, drop or aggregate in the recording thread
+     * @since 2.3.0
+     */
+    public void setStatsOverflowPolicy(OverflowPolicy overflowPolicy) {
+        Stats.getInstance().setOverflowPolicy(overflowPolicy);
+    }
+
+    /**
+     * Set the size of the buffer between recording threads and the stats thread, call it before {@link #run}.
+     * Defaults to 65536, or the LOCUST_STATS_BUFFER_SIZE environment variable.
+     *
+     * @param size max number of records waiting for the stats thread
+     * @since 2.3.0
+     */
+    public void setStatsBufferSize(int size) {
+        Stats.getInstance().setSampleBufferSize(size);
+    }
+
+    /**
+     * Keep an HdrHistogram-style latency histogram of the whole run for every request type and name, which answers
+     * high percentiles like p99.99 exactly. It's logged when locust4j stops, and can be queried at any time by
+     * {@link Stats#getLatencyHistogram(String, String)}. Defaults to the LOCUST_STATS_HISTOGRAM_DIGITS environment
+     * variable, or disabled. Call it before {@link #run}.
+     *
+     * @param significantDigits precision of the histograms from 1 to 5, or 0 to disable them
+     * @since 2.3.0
+     */
+    public void setLatencyHistogramDigits(int significantDigits) {
+        Stats.getInstance().setLatencyHistogramDigits(significantDigits);
+    }
+
+    /**
+     * Rewrite error messages before they are counted, like {@link ErrorNormalizer#MASK_IDS}, so messages with request
+     * IDs or timestamps don't end up as one error per failure.
+     *
+     * @param errorNormalizer the normalizer, or null to keep error messages as they are
+     * @since 2.3.0
+     */
+    public void setErrorNormalizer(ErrorNormalizer errorNormalizer) {
+        Stats.getInstance().setErrorNormalizer(errorNormalizer);
+    }
+
+    /**
+     * Report the failures of throwables, like the exceptions thrown by tasks, like {@link Throwable#toString()}, which
+     * starts with the class name, instead of {@link Throwable#getMessage()} as locust4j always did. Defaults to false,
+     * or the LOCUST_STATS_ERRORS_WITH_CLASS_NAME environment variable. Call it before {@link #run}.
+     *
+     * @param errorsWithClassName report the class name of throwables or not
+     * @since 2.3.0
+     */
+    public void setErrorsWithClassName(boolean errorsWithClassName) {
+        Stats.getInstance().setErrorsWithClassName(errorsWithClassName);
+    }
+
+    /**
+     * Limit the number of distinct errors in a report, the others are counted as "other errors" of their request
+     * type and name. Defaults to 1000, or the LOCUST_STATS_MAX_ERRORS environment variable.
+     *
+     * @param maxErrors max number of distinct errors per report
+     * @since 2.3.0
+     */
+    public void setMaxErrors(int maxErrors) {
+        Stats.getInstance().setMaxErrors(maxErrors);
+    }
+
+    /**
+     * Rewrite request names before they are counted, like {@link NameNormalizer#URL_TEMPLATE}, so raw URLs with IDs
+     * don't end up as one entry per URL.
+     *
+     * @param nameNormalizer the normalizer, or null to keep request names as they are
+     * @since 2.3.0
+     */
+    public void setNameNormalizer(NameNormalizer nameNormalizer) {
+        Stats.getInstance().setNameNormalizer(nameNormalizer);
+    }
+
+    /**
+     * Limit the number of entries, new names beyond the limit are counted as "other names" of their request type.
+     * Defaults to 10000, or the LOCUST_STATS_MAX_ENTRIES environment variable.
+     *
+     * @param maxEntries max number of entries
+     * @since 2.3.0
+     */
+    public void setMaxStatsEntries(int maxEntries) {
+        Stats.getInstance().setMaxEntries(maxEntries);
+    }
+
+    /**
+     * Evict the entries without any request for some reports in a row, which keeps the memory of long running tests
+     * bounded. Defaults to 0, which never evicts, or the LOCUST_STATS_EVICT_IDLE_REPORTS environment variable.
+     *
+     * @param reports number of idle reports before an entry is evicted, 0 to disable eviction
+     * @since 2.3.0
+     */
+    public void setEvictIdleStatsEntries(int reports) {
+        Stats.getInstance().setEvictIdleReports(reports);
+    }
+
+    /**
+     * Set how often the stats are reported to the master, a longer interval costs less CPU of the master when
+     * there are hundreds of workers. Defaults to 3000, or the LOCUST_STATS_REPORT_INTERVAL environment variable.
+     *
+     * @param millis report interval in millis
+     * @since 2.3.0
+     */
+    public void setStatsReportInterval(long millis) {
+        Stats.getInstance().setReportInterval(millis);
+    }
+
+    /**
+     * Lengthen the report interval when there are many entries and errors to report, up to 10 seconds, and shorten
+     * it to 1 second during spawning. Defaults to the LOCUST_STATS_ADAPTIVE_REPORT_INTERVAL environment variable,
+     * or disabled.
+     *
+     * @param adaptive enable the adaptive mode or not
+     * @since 2.3.0
+     */
+    public void setAdaptiveStatsReportInterval(boolean adaptive) {
+        Stats.getInstance().setAdaptiveReportInterval(adaptive);
+    }
+
+    /**
+     * Only aggregate one of every N successful records, and count it N times, for very cheap calls at millions of
+     * requests per second. The number of requests and RPS stay accurate, failures are never sampled.
+     * Defaults to 1, which records everything, or the LOCUST_STATS_SAMPLE_RATE environment variable.
+     *
+     * @param sampleRate record 1 in sampleRate successful records
+     * @since 2.3.0
+     */
+    public void setStatsSampleRate(int sampleRate) {
+        Stats.getInstance().setSampleRate(sampleRate);
+    }
+
+    /**
+     * Adapt the sample rate after every report, so that about recordsPerSecond records are aggregated per second.
+     * Defaults to 0, which keeps the sample rate as it is, or the LOCUST_STATS_SAMPLE_BUDGET environment variable.
+     *
+     * @param recordsPerSecond max number of records aggregated per second, or 0 to disable it
+     * @since 2.3.0
+     */
+    public void setStatsSampleBudget(long recordsPerSecond) {
+        Stats.getInstance().setSampleBudget(recordsPerSecond);
+    }
+
+    /**
+     * Append the stats of every report to a local memory-mapped file, which survives a restart of the master.
+     * Convert it to a locust-style stats_history.csv with {@link com.github.myzhan.locust4j.stats.StatsHistoryReader}.
+     * It must be set before running tasks.
+     * Defaults to none, or the LOCUST_STATS_HISTORY_FILE environment variable.
+     *
+     * @param historyFile path of the history file, an existing one is appended to
+     * @since 2.3.0
+     */
+    public void setStatsHistoryFile(String historyFile) {
+        Stats.getInstance().setHistoryFile(historyFile);
+    }
+
+    /**
+     * Handle custom messages sent by the master with send_message, the counterpart of register_message of locust.
+     * Handlers are called by a thread of their own, so they never block the messages of locust itself.
+     *
+     * @param type    the message type
+     * @param handler the handler
+     * @throws IllegalArgumentException if it's a message type of locust, or it already has a handler
+     * @since 2.3.0
+     */
+    public synchronized void registerMessageHandler(String type, MessageHandler handler) {
+        if (Runner.isLocustMessageType(type)) {
+            throw new IllegalArgumentException(type + " is a message type of locust");
+        }
+        if (this.messageHandlers.containsKey(type)) {
+            throw new IllegalArgumentException(type + " already has a handler");
+        }
+        if (this.started) {
+            this.runner.registerMessageHandler(type, handler);
+        }
+        this.messageHandlers.put(type, handler);
+    }
+
+    /**
+     * Send a custom message to the master, which is handled by the listener registered by register_message of locust.
+     *
+     * @param type the message type
+     * @param data the message data
+     * @throws IOException if the message can't be sent
+     * @throws IllegalStateException if locust4j isn't connected to the master
+     * @since 2.3.0
+     */
+    public void sendMessage(String type, Map<String, Object> data) throws IOException {
+        sendMessage(type, (Object) data);
+    }
+
+    /**
+     * Send a custom message of any data to the master, like a list, a string or a number. The data is packed like
+     * the values of a map, types beyond them can be registered in
+     * {@link com.github.myzhan.locust4j.message.CodecRegistry}.
+     *
+     * @param type the message type
+     * @param data the message data
+     * @throws IOException if the message can't be sent
+     * @throws IllegalStateException if locust4j isn't connected to the master
+     * @since 2.3.0
+     */
+    public synchronized void sendMessage(String type, Object data) throws IOException {
+        if (!this.started) {
+            throw new IllegalStateException("Locust4j isn't connected to the master");
+        }
+        this.runner.sendMessage(type, data);
+    }
+
     protected void setRunner(Runner runner) {
         this.runner = runner;
     }
@@ -177,6 +413,9 @@ public class Locust {
 
         runner = new Runner();
         runner.setStats(Stats.getInstance());
+        for (Map.Entry<String, MessageHandler> entry : this.messageHandlers.entrySet()) {
+            runner.registerMessageHandler(entry.getKey(), entry.getValue());
+        }
 
         Client client = new ZeromqClient(masterHost, masterPort, runner.getNodeID());
         runner.setRPCClient(client);
@@ -239,6 +478,10 @@ public class Locust {
             if (this.runner != null) {
                 this.runner.quit();
             }
+            String latencyReport = Stats.getInstance().getLatencyReport();
+            if (!latencyReport.isEmpty()) {
+                logger.info("Latencies of the whole run, in millis:\n{}", latencyReport);
+            }
             this.started = false;
         }
     }
@@ -265,13 +508,12 @@ public class Locust {
      * @since 1.0.0
      */
     public void recordSuccess(String requestType, String name, long responseTime, long contentLength) {
-        RequestSuccess success = new RequestSuccess();
-        success.setRequestType(requestType);
-        success.setName(name);
-        success.setResponseTime(responseTime);
-        success.setContentLength(contentLength);
-        Stats.getInstance().getReportSuccessQueue().offer(success);
-        Stats.getInstance().wakeMeUp();
+        Stats stats = Stats.getInstance();
+        if (stats.isStriped() || stats.getSampleRate() > 1) {
+            stats.logRequestStriped(requestType, name, responseTime, contentLength);
+            return;
+        }
+        stats.record(stats.getHandle(requestType, name), responseTime, contentLength, null);
     }
 
     /**
@@ -284,13 +526,62 @@ public class Locust {
      * @since 1.0.0
      */
     public void recordFailure(String requestType, String name, long responseTime, String error) {
-        RequestFailure failure = new RequestFailure();
-        failure.setRequestType(requestType);
-        failure.setName(name);
-        failure.setResponseTime(responseTime);
-        failure.setError(error);
-        Stats.getInstance().getReportFailureQueue().offer(failure);
-        Stats.getInstance().wakeMeUp();
+        Stats stats = Stats.getInstance();
+        if (stats.isStriped()) {
+            stats.logFailureStriped(requestType, name, responseTime, error);
+            return;
+        }
+        stats.record(stats.getHandle(requestType, name), responseTime, 0, error);
+    }
+
+    /**
+     * Add a failed record with a throwable, it's much cheaper than building an error message for every failure.
+     * Failures are aggregated by the class and the message of the throwable, and reported like
+     * {@link Throwable#getMessage()}, or {@link Throwable#toString()} if {@link #setErrorsWithClassName(boolean)} is
+     * set, the message is only built once per distinct error when reporting.
+     *
+     * @param requestType  locust use request type to classify test results
+     * @param name         like request type, used by locust to classify test results
+     * @param responseTime how long does it take for a single test scenario, in millis
+     * @param error        the cause of the failure
+     * @since 2.3.0
+     */
+    public void recordFailure(String requestType, String name, long responseTime, Throwable error) {
+        Stats.getInstance().logFailureStriped(requestType, name, responseTime, error);
+    }
+
+    /**
+     * Resolve a stats handle once, then record results with {@link StatsHandle#success(long, long)} and
+     * {@link StatsHandle#failure(long, String)}, which allocate nothing on the hot path.
+     *
+     * @param requestType locust use request type to classify test results
+     * @param name        like request type, used by locust to classify test results
+     * @return the stats handle of requestType and name
+     * @since 2.3.0
+     */
+    public StatsHandle getStatsHandle(String requestType, String name) {
+        return Stats.getInstance().getHandle(requestType, name);
+    }
+
+    /**
+     * Start timing a request with nanosecond resolution, it's recorded when the timer is closed.
+     * The response time is rounded to millis for the master, and recorded in micros by the latency histograms, which
+     * are kept for timed requests even if they're not enabled, see {@link Stats#getLatencyHistogram(String, String)}.
+     *
+     * <pre>
+     * try (RequestTimer timer = Locust.getInstance().startTimer("http", "GET /")) {
+     *     ...
+     *     timer.fail("error message");
+     * }
+     * </pre>
+     *
+     * @param requestType locust use request type to classify test results
+     * @param name        like request type, used by locust to classify test results
+     * @return a started timer, which must be closed by the calling thread
+     * @since 2.3.0
+     */
+    public RequestTimer startTimer(String requestType, String name) {
+        return getStatsHandle(requestType, name).startTimer();
     }
 
     /**
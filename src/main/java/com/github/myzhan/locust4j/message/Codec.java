@@ -0,0 +1,34 @@
+package com.github.myzhan.locust4j.message;
+
+import java.io.IOException;
+
+import org.msgpack.core.MessagePacker;
+
+/**
+ * A {@link Codec} packs values of a type straight into the packer, it's registered in a {@link CodecRegistry}
+ * and used by the {@link Visitor} when a message is packed.
+ *
+ * <pre>
+ * CodecRegistry.getDefault().register(Point.class, new Codec&lt;Point&gt;() {
+ *     public void pack(MessagePacker packer, Point value, Visitor visitor) throws IOException {
+ *         packer.packArrayHeader(2).packInt(value.x).packInt(value.y);
+ *     }
+ * });
+ * </pre>
+ *
+ * @param <T> the type of values
+ * @author myzhan
+ * @since 2.3.0
+ */
+public interface Codec<T> {
+
+    /**
+     * Pack exactly one msgpack value.
+     *
+     * @param packer  the packer to pack into
+     * @param value   the value to pack, never null
+     * @param visitor the visitor to pack nested values of any type with
+     * @throws IOException if the value can't be packed
+     */
+    void pack(MessagePacker packer, T value, Visitor visitor) throws IOException;
+}
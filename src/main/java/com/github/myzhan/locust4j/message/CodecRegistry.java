@@ -0,0 +1,192 @@
+package com.github.myzhan.locust4j.message;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.msgpack.core.MessagePacker;
+import org.msgpack.value.Value;
+
+/**
+ * A {@link CodecRegistry} finds the {@link Codec} of a value by its class.
+ *
+ * The codec registered for the class itself is used, otherwise the one of its most specific registered superclass
+ * or interface, like a codec of {@link java.util.SortedMap} over the one of {@link Map}. Between unrelated types, the
+ * first registered one is used. The codec found is cached per class, so a value costs a single lookup no matter how
+ * many codecs are registered.
+ *
+ * Null, strings and boxed primitives are packed by the {@link Visitor} itself and can't be registered.
+ *
+ * Besides maps, lists and the types sent by locust4j, byte arrays, {@link BigInteger}, {@link Instant} and
+ * {@link Value} are registered, which covers everything decoded by {@link MessageDecoder}, and long[], int[] and
+ * double[] are packed as arrays without boxing.
+ *
+ * @author myzhan
+ * @since 2.3.0
+ */
+public final class CodecRegistry {
+
+    private static final CodecRegistry DEFAULT = new CodecRegistry();
+
+    /**
+     * Guarded by this.
+     */
+    private final Map<Class<?>, Codec<?>> codecs = new LinkedHashMap<>();
+    /**
+     * Replaced whenever a codec is registered, so classes resolved before are resolved again.
+     */
+    private volatile ClassValue<Codec<?>> resolved;
+
+    public CodecRegistry() {
+        registerDefaults();
+    }
+
+    /**
+     * @return the registry used by messages
+     */
+    public static CodecRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Register the codec of a type, replacing the one registered before.
+     *
+     * @param type  values of this type and its subtypes are packed by the codec
+     * @param codec the codec
+     * @param <T>   the type of values
+     * @throws IllegalArgumentException if values of the type are packed by the visitor itself
+     */
+    public synchronized <T> void register(Class<T> type, Codec<? super T> codec) {
+        if (type == String.class || type == Integer.class || type == Long.class || type == Boolean.class
+            || type == Float.class || type == Double.class) {
+            throw new IllegalArgumentException(type.getSimpleName() + " is always packed as it is");
+        }
+        codecs.put(type, codec);
+        resolved = new ClassValue<Codec<?>>() {
+            @Override
+            protected Codec<?> computeValue(Class<?> type) {
+                return resolve(type);
+            }
+        };
+    }
+
+    /**
+     * @param type the class of a value
+     * @return the codec of the class, or null if there isn't one
+     */
+    @SuppressWarnings("unchecked")
+    public Codec<Object> lookup(Class<?> type) {
+        return (Codec<Object>) resolved.get(type);
+    }
+
+    private synchronized Codec<?> resolve(Class<?> type) {
+        Codec<?> codec = codecs.get(type);
+        if (null != codec) {
+            return codec;
+        }
+        Class<?> best = null;
+        for (Map.Entry<Class<?>, Codec<?>> entry : codecs.entrySet()) {
+            Class<?> candidate = entry.getKey();
+            if (candidate.isAssignableFrom(type) && (null == best || best.isAssignableFrom(candidate))) {
+                best = candidate;
+                codec = entry.getValue();
+            }
+        }
+        return codec;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Class<T> typeOf(Class<?> type) {
+        return (Class<T>) type;
+    }
+
+    private void registerDefaults() {
+        register(typeOf(Map.class), new Codec<Map<?, ?>>() {
+            @Override
+            public void pack(MessagePacker packer, Map<?, ?> value, Visitor visitor) throws IOException {
+                packer.packMapHeader(value.size());
+                for (Map.Entry<?, ?> entry : value.entrySet()) {
+                    visitor.visit(entry.getKey());
+                    visitor.visit(entry.getValue());
+                }
+            }
+        });
+        register(typeOf(List.class), new Codec<List<?>>() {
+            @Override
+            public void pack(MessagePacker packer, List<?> value, Visitor visitor) throws IOException {
+                packer.packArrayHeader(value.size());
+                for (Object object : value) {
+                    visitor.visit(object);
+                }
+            }
+        });
+        register(LongIntMap.class, new Codec<LongIntMap>() {
+            @Override
+            public void pack(MessagePacker packer, LongIntMap value, Visitor visitor) throws IOException {
+                packer.packMapHeader(value.size());
+                value.packEntries(packer);
+            }
+        });
+        register(PackedValue.class, new Codec<PackedValue>() {
+            @Override
+            public void pack(MessagePacker packer, PackedValue value, Visitor visitor) throws IOException {
+                packer.writePayload(value.getBytes());
+            }
+        });
+        register(long[].class, new Codec<long[]>() {
+            @Override
+            public void pack(MessagePacker packer, long[] value, Visitor visitor) throws IOException {
+                packer.packArrayHeader(value.length);
+                for (long element : value) {
+                    packer.packLong(element);
+                }
+            }
+        });
+        register(int[].class, new Codec<int[]>() {
+            @Override
+            public void pack(MessagePacker packer, int[] value, Visitor visitor) throws IOException {
+                packer.packArrayHeader(value.length);
+                for (int element : value) {
+                    packer.packInt(element);
+                }
+            }
+        });
+        register(double[].class, new Codec<double[]>() {
+            @Override
+            public void pack(MessagePacker packer, double[] value, Visitor visitor) throws IOException {
+                packer.packArrayHeader(value.length);
+                for (double element : value) {
+                    packer.packDouble(element);
+                }
+            }
+        });
+        register(byte[].class, new Codec<byte[]>() {
+            @Override
+            public void pack(MessagePacker packer, byte[] value, Visitor visitor) throws IOException {
+                packer.packBinaryHeader(value.length);
+                packer.writePayload(value);
+            }
+        });
+        register(BigInteger.class, new Codec<BigInteger>() {
+            @Override
+            public void pack(MessagePacker packer, BigInteger value, Visitor visitor) throws IOException {
+                packer.packBigInteger(value);
+            }
+        });
+        register(Instant.class, new Codec<Instant>() {
+            @Override
+            public void pack(MessagePacker packer, Instant value, Visitor visitor) throws IOException {
+                packer.packTimestamp(value);
+            }
+        });
+        register(Value.class, new Codec<Value>() {
+            @Override
+            public void pack(MessagePacker packer, Value value, Visitor visitor) throws IOException {
+                packer.packValue(value);
+            }
+        });
+    }
+}
@@ -1,32 +1,179 @@
 package com.github.myzhan.locust4j.message;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.msgpack.core.MessagePacker;
 
 /**
+ * A primitive long to int map with open addressing and linear probing, used to count things like response times
+ * and requests per second without boxing.
+ *
+ * Values are counters, a slot whose value is zero is empty, so adding zero or negative numbers is ignored.
+ *
  * @author vrajat
  */
 public class LongIntMap {
-    protected Map<Long, Integer> internalStore;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
 
     public LongIntMap() {
-        internalStore = new HashMap<>(16);
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize number of keys the map can hold without resizing
+     */
+    public LongIntMap(int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        this.allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+        this.size = 0;
+    }
+
+    private int indexOf(long k) {
+        long h = k * 0x9E3779B97F4A7C15L;
+        int index = (int) (h ^ (h >>> 32)) & mask;
+        while (values[index] != 0 && keys[index] != k) {
+            index = (index + 1) & mask;
+        }
+        return index;
     }
 
     public Integer get(Long k) {
-        return internalStore.get(k);
+        int value = values[indexOf(k)];
+        return value == 0 ? null : value;
+    }
+
+    public void add(long k) {
+        this.add(k, 1);
     }
 
-    public void add(Long k) {
-        if (internalStore.containsKey(k)) {
-            internalStore.put(k, internalStore.get(k) + 1);
+    /**
+     * Increase the count of a key in place.
+     *
+     * @param k     the key
+     * @param delta positive number to add
+     */
+    public void add(long k, int delta) {
+        if (delta <= 0) {
+            return;
+        }
+        int index = indexOf(k);
+        if (values[index] == 0) {
+            keys[index] = k;
+            size++;
+            values[index] = delta;
+            if (size * 2 > values.length) {
+                this.rehash(values.length * 2);
+            }
         } else {
-            internalStore.put(k, 1);
+            values[index] += delta;
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+        this.allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != 0) {
+                int index = indexOf(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+                size++;
+            }
+        }
+    }
+
+    public void merge(LongIntMap other) {
+        for (int i = 0; i < other.values.length; i++) {
+            if (other.values[i] != 0) {
+                this.add(other.keys[i], other.values[i]);
+            }
+        }
+    }
+
+    public void forEach(EntryConsumer consumer) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != 0) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * @return number of slots, the map grows when half of them are used
+     */
+    int capacity() {
+        return values.length;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Remove all the keys, but keep the capacity.
+     */
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(values, 0);
+            size = 0;
+        }
+    }
+
+    /**
+     * Pack the entries without a map header, so they can be packed along with entries kept elsewhere.
+     *
+     * @param packer the packer to pack into
+     * @throws IOException if the packer fails to write
+     * @since 2.3.0
+     */
+    public void packEntries(MessagePacker packer) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != 0) {
+                packer.packLong(keys[i]);
+                packer.packInt(values[i]);
+            }
         }
     }
 
     @Override
     public String toString() {
-        return this.internalStore.toString();
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != 0) {
+                if (sb.length() > 1) {
+                    sb.append(", ");
+                }
+                sb.append(keys[i]).append('=').append(values[i]);
+            }
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Receives the entries of a {@link LongIntMap} without boxing.
+     */
+    public interface EntryConsumer {
+        void accept(long key, int value);
     }
 }
@@ -1,14 +1,12 @@
 package com.github.myzhan.locust4j.message;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Map;
 
-import org.msgpack.core.MessageBufferPacker;
 import org.msgpack.core.MessageFormat;
-import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePacker;
 import org.msgpack.core.MessageUnpacker;
+import org.msgpack.value.ValueType;
 
 /**
  * @author vrajat
@@ -16,12 +14,44 @@ import org.msgpack.core.MessageUnpacker;
 public class Message {
 
     private final String type;
-    private final Map<String, Object> data;
+    /**
+     * A map for the messages of locust, custom messages may carry any value, like a list or a string.
+     */
+    private Object data;
     private int version;
     private final String nodeID;
     private static final String TYPE_CLIENT_READY = "client_ready";
 
+    /**
+     * The received bytes and where the data is in them, the data is decoded when it's asked for.
+     */
+    private byte[] bytes;
+    private int dataOffset;
+    private int dataLength;
+    private boolean dataIsMap;
+
+    /**
+     * Messages are packed by the thread sending them, every thread reuses its own encoder.
+     */
+    private static final ThreadLocal<MessageEncoder> ENCODER = new ThreadLocal<MessageEncoder>() {
+        @Override
+        protected MessageEncoder initialValue() {
+            return new MessageEncoder();
+        }
+    };
+
     public Message(String type, Map<String, Object> data, int version, String nodeID) {
+        this(type, (Object) data, version, nodeID);
+    }
+
+    /**
+     * @param type    the message type
+     * @param data    the message data, any value packed by the {@link Visitor}, or null
+     * @param version the version of client_ready messages, -1 for other messages
+     * @param nodeID  the node id
+     * @since 2.3.0
+     */
+    public Message(String type, Object data, int version, String nodeID) {
         this.type = type;
         this.data = data;
         this.version = version;
@@ -29,17 +59,22 @@ public class Message {
     }
 
     public Message(byte[] bytes) throws IOException {
-        MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(bytes);
+        MessageUnpacker unpacker = MessageDecoder.newUnpacker(bytes, 0, bytes.length);
 
-        int arrayHeader = unpacker.unpackArrayHeader();
+        unpacker.unpackArrayHeader();
         this.type = unpacker.unpackString();
 
-        // unpack data
-        if (unpacker.getNextFormat() != MessageFormat.NIL) {
-            this.data = Message.unpackMap(unpacker);
-        } else {
+        // skip data, it's decoded by getPayload(), getData() or getField()
+        MessageFormat dataFormat = unpacker.getNextFormat();
+        if (dataFormat == MessageFormat.NIL) {
             unpacker.unpackNil();
             this.data = null;
+        } else {
+            this.bytes = bytes;
+            this.dataIsMap = dataFormat.getValueType() == ValueType.MAP;
+            this.dataOffset = (int) unpacker.getTotalReadBytes();
+            unpacker.skipValue();
+            this.dataLength = (int) unpacker.getTotalReadBytes() - this.dataOffset;
         }
         if (unpacker.getNextFormat() != MessageFormat.NIL) {
             this.nodeID = unpacker.unpackString();
@@ -50,73 +85,79 @@ public class Message {
         unpacker.close();
     }
 
+    /**
+     * Decode a map, see {@link MessageDecoder} for the types of values.
+     *
+     * @param unpacker the unpacker to decode from
+     * @return the decoded map
+     * @throws IOException if the map is malformed
+     */
     public static Map<String, Object> unpackMap(MessageUnpacker unpacker) throws IOException {
-        int mapSize = unpacker.unpackMapHeader();
-        Map<String, Object> result = new HashMap<>(6);
-        while (mapSize > 0) {
-            String key = null;
-            // unpack key
-            if (unpacker.getNextFormat() == MessageFormat.NIL) {
-                unpacker.unpackNil();
-            } else {
-                key = unpacker.unpackString();
-            }
-            // unpack value
-            MessageFormat messageFormat = unpacker.getNextFormat();
-            Object value;
-
-            switch (messageFormat.getValueType()) {
-                case BOOLEAN:
-                    value = unpacker.unpackBoolean();
-                    break;
-                case FLOAT:
-                    value = unpacker.unpackFloat();
-                    break;
-                case INTEGER:
-                    value = unpacker.unpackInt();
-                    break;
-                case NIL:
-                    value = null;
-                    unpacker.unpackNil();
-                    break;
-                case STRING:
-                    value = unpacker.unpackString();
-                    break;
-                case MAP:
-                    value = unpackMap(unpacker);
-                    break;
-                case ARRAY:
-                    int size = unpacker.unpackArrayHeader();
-                    value = new ArrayList(size);
-                    for(int index = 0; index < size; ++index) {
-                        ((ArrayList) value).add(unpacker.unpackString());
-                    }
-                    break;
-                default:
-                    throw new IOException("Message received unsupported type: " + messageFormat.getValueType());
-            }
-            if (null != key) {
-                result.put(key, value);
-            }
-            mapSize--;
-        }
-        return result;
+        return MessageDecoder.decodeMap(unpacker);
     }
 
     public String getType() {
         return this.type;
     }
 
+    /**
+     * @return the data as a map, or null if there isn't any data or it isn't a map, see {@link #getPayload()}
+     */
+    @SuppressWarnings("unchecked")
     public Map<String, Object> getData() {
+        Object payload = getPayload();
+        return payload instanceof Map ? (Map<String, Object>) payload : null;
+    }
+
+    /**
+     * Get the data of any type, custom messages may carry a list, a string or a number instead of a map.
+     * See {@link MessageDecoder} for the types of decoded values.
+     *
+     * @return the data, or null if there isn't any
+     * @since 2.3.0
+     */
+    public Object getPayload() {
+        if (null != this.bytes) {
+            try (MessageUnpacker unpacker = MessageDecoder.newUnpacker(this.bytes, this.dataOffset,
+                this.dataLength)) {
+                this.data = this.dataIsMap ? unpackMap(unpacker) : MessageDecoder.decodeValue(unpacker);
+            } catch (IOException ex) {
+                throw new IllegalStateException("Message received malformed data", ex);
+            }
+            this.bytes = null;
+        }
         return this.data;
     }
 
+    /**
+     * Get a field of the data, without decoding the others if the data hasn't been decoded yet.
+     *
+     * @param key the key of the field
+     * @return the value of the field, or null if the field is missing or the data isn't a map
+     */
+    public Object getField(String key) {
+        if (null == this.bytes) {
+            Map<String, Object> data = getData();
+            return null == data ? null : data.get(key);
+        }
+        if (!this.dataIsMap) {
+            return null;
+        }
+        try (MessageUnpacker unpacker = MessageDecoder.newUnpacker(this.bytes, this.dataOffset,
+            this.dataLength)) {
+            return MessageDecoder.decodeField(unpacker, key);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Message received malformed data", ex);
+        }
+    }
+
     public String getNodeID() {
         return this.nodeID;
     }
 
     public byte[] getBytes() throws IOException {
-        MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+        MessageEncoder encoder = ENCODER.get();
+        MessagePacker packer = encoder.begin();
         Visitor visitor = new Visitor(packer);
         // a message contains three fields, (type & data & nodeID)
         packer.packArrayHeader(3);
@@ -132,27 +173,17 @@ public class Message {
                 packer.packNil();
             }
         } else {
-            if (this.data != null) {
-                packer.packMapHeader(this.data.size());
-                for (Map.Entry<String, Object> entry : this.data.entrySet()) {
-                    packer.packString(entry.getKey());
-                    visitor.visit(entry.getValue());
-                }
-            } else {
-                packer.packNil();
-            }
+            visitor.visit(getPayload());
         }
 
         // pack the third field
         packer.packString(this.nodeID);
-        byte[] bytes = packer.toByteArray();
-        packer.close();
-        return bytes;
+        return encoder.toByteArray();
     }
 
     @Override
     public String toString() {
-        return String.format("%s-%s-%s", nodeID, type, data);
+        return String.format("%s-%s-%s", nodeID, type, getPayload());
     }
 
 }
\ No newline at end of file
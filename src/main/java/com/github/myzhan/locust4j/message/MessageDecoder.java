@@ -0,0 +1,165 @@
+package com.github.myzhan.locust4j.message;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.msgpack.core.ExtensionTypeHeader;
+import org.msgpack.core.MessageFormat;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.value.ValueFactory;
+import org.msgpack.value.ValueType;
+
+/**
+ * A {@link MessageDecoder} decodes msgpack values sent by the master into plain Java objects.
+ *
+ * <ul>
+ * <li>integers keep their width, int8 to int32, uint8 and uint16 are decoded as {@link Integer}, uint32 and int64 as
+ * {@link Long}, and uint64 as {@link Long} or {@link BigInteger} if it doesn't fit</li>
+ * <li>float32 is decoded as {@link Float} and float64 as {@link Double}</li>
+ * <li>strings are decoded as {@link String} and binaries as byte[]</li>
+ * <li>arrays are decoded as {@link List} and maps as {@link Map}, both can be nested and hold any type</li>
+ * <li>timestamps are decoded as {@link java.time.Instant}, other extensions as
+ * {@link org.msgpack.value.ExtensionValue}</li>
+ * </ul>
+ *
+ * @author myzhan
+ * @since 2.3.0
+ */
+public final class MessageDecoder {
+
+    /**
+     * The default unpacker allocates a string decoding buffer of 8192 chars, which costs more than decoding a whole
+     * message of the master. Strings longer than the buffer are decoded in chunks.
+     */
+    private static final MessagePack.UnpackerConfig UNPACKER_CONFIG = new MessagePack.UnpackerConfig()
+        .withStringDecoderBufferSize(256);
+
+    private MessageDecoder() {
+    }
+
+    /**
+     * @param bytes  the bytes to decode
+     * @param offset where to start
+     * @param length how many bytes to decode
+     * @return an unpacker which is cheap to create for small messages
+     */
+    public static MessageUnpacker newUnpacker(byte[] bytes, int offset, int length) {
+        return UNPACKER_CONFIG.newUnpacker(bytes, offset, length);
+    }
+
+    /**
+     * Decode the next value.
+     *
+     * @param unpacker the unpacker to decode from
+     * @return the decoded value
+     * @throws IOException if the value is malformed
+     */
+    public static Object decodeValue(MessageUnpacker unpacker) throws IOException {
+        MessageFormat format = unpacker.getNextFormat();
+        switch (format.getValueType()) {
+            case NIL:
+                unpacker.unpackNil();
+                return null;
+            case BOOLEAN:
+                return unpacker.unpackBoolean();
+            case INTEGER:
+                return decodeInteger(unpacker, format);
+            case FLOAT:
+                if (format == MessageFormat.FLOAT32) {
+                    return unpacker.unpackFloat();
+                }
+                return unpacker.unpackDouble();
+            case STRING:
+                return unpacker.unpackString();
+            case BINARY:
+                return unpacker.readPayload(unpacker.unpackBinaryHeader());
+            case ARRAY:
+                return decodeArray(unpacker);
+            case MAP:
+                return decodeMap(unpacker);
+            case EXTENSION:
+                ExtensionTypeHeader header = unpacker.unpackExtensionTypeHeader();
+                if (header.isTimestampType()) {
+                    return unpacker.unpackTimestamp(header);
+                }
+                return ValueFactory.newExtension(header.getType(), unpacker.readPayload(header.getLength()));
+            default:
+                throw new IOException("Message received unsupported type: " + format.getValueType());
+        }
+    }
+
+    private static Object decodeInteger(MessageUnpacker unpacker, MessageFormat format) throws IOException {
+        switch (format) {
+            case UINT32:
+            case INT64:
+                return unpacker.unpackLong();
+            case UINT64:
+                BigInteger value = unpacker.unpackBigInteger();
+                if (value.bitLength() < Long.SIZE) {
+                    return value.longValue();
+                }
+                return value;
+            default:
+                return unpacker.unpackInt();
+        }
+    }
+
+    private static List<Object> decodeArray(MessageUnpacker unpacker) throws IOException {
+        int size = unpacker.unpackArrayHeader();
+        List<Object> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(decodeValue(unpacker));
+        }
+        return list;
+    }
+
+    /**
+     * Decode the next value, which must be a map. Keys are usually strings, but they are decoded like any value.
+     *
+     * @param unpacker the unpacker to decode from
+     * @return the decoded map
+     * @throws IOException if the value is malformed or not a map
+     */
+    @SuppressWarnings("unchecked")
+    public static <K> Map<K, Object> decodeMap(MessageUnpacker unpacker) throws IOException {
+        int size = unpacker.unpackMapHeader();
+        Map<Object, Object> map = new HashMap<>(capacityOf(size));
+        for (int i = 0; i < size; i++) {
+            Object key = decodeValue(unpacker);
+            map.put(key, decodeValue(unpacker));
+        }
+        return (Map<K, Object>) map;
+    }
+
+    /**
+     * Find a key of the next value, which must be a map, and only decode its value, the others are skipped.
+     *
+     * @param unpacker the unpacker to decode from
+     * @param key      the key to find
+     * @return the decoded value, or null if the key is missing
+     * @throws IOException if the value is malformed or not a map
+     */
+    public static Object decodeField(MessageUnpacker unpacker, String key) throws IOException {
+        int size = unpacker.unpackMapHeader();
+        for (int i = 0; i < size; i++) {
+            if (unpacker.getNextFormat().getValueType() == ValueType.STRING) {
+                if (key.equals(unpacker.unpackString())) {
+                    return decodeValue(unpacker);
+                }
+            } else {
+                unpacker.skipValue();
+            }
+            unpacker.skipValue();
+        }
+        return null;
+    }
+
+    private static int capacityOf(int size) {
+        return size < 3 ? size + 1 : (int) (size / 0.75f + 1.0f);
+    }
+}
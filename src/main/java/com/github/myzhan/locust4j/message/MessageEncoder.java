@@ -0,0 +1,115 @@
+package com.github.myzhan.locust4j.message;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePacker;
+import org.msgpack.core.buffer.MessageBuffer;
+import org.msgpack.core.buffer.MessageBufferOutput;
+
+/**
+ * A {@link MessageEncoder} packs into a single array which grows as needed and is kept for the next message,
+ * so encoding allocates nothing but the returned bytes once the array is large enough.
+ *
+ * It's not thread-safe, every thread keeps one of its own.
+ *
+ * <pre>
+ * MessagePacker packer = encoder.begin();
+ * packer.packString("hello");
+ * byte[] bytes = encoder.toByteArray();
+ * </pre>
+ *
+ * @author myzhan
+ * @since 2.3.0
+ */
+public final class MessageEncoder {
+
+    private static final int DEFAULT_CAPACITY = 8192;
+
+    private final GrowableBufferOutput output;
+    private final MessagePacker packer;
+
+    public MessageEncoder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity initial size of the array in bytes
+     */
+    public MessageEncoder(int initialCapacity) {
+        this.output = new GrowableBufferOutput(initialCapacity);
+        this.packer = MessagePack.newDefaultPacker(this.output);
+    }
+
+    /**
+     * Start packing from the beginning, anything packed before is discarded.
+     *
+     * @return the packer to pack into
+     * @throws IOException never, the packer writes to memory
+     */
+    public MessagePacker begin() throws IOException {
+        packer.flush();
+        output.size = 0;
+        return packer;
+    }
+
+    /**
+     * @return a copy of the bytes packed since {@link #begin()}
+     * @throws IOException never, the packer writes to memory
+     */
+    public byte[] toByteArray() throws IOException {
+        packer.flush();
+        return Arrays.copyOf(output.bytes, output.size);
+    }
+
+    /**
+     * The packer only asks for a buffer after it has written back the previous one,
+     * so the array can be replaced by a larger one whenever it's asked for.
+     */
+    private static final class GrowableBufferOutput implements MessageBufferOutput {
+        private byte[] bytes;
+        private int size;
+
+        private GrowableBufferOutput(int initialCapacity) {
+            this.bytes = new byte[initialCapacity];
+        }
+
+        private void ensureCapacity(int minimumSize) {
+            if (bytes.length - size < minimumSize) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + minimumSize));
+            }
+        }
+
+        @Override
+        public MessageBuffer next(int minimumSize) {
+            ensureCapacity(minimumSize);
+            return MessageBuffer.wrap(bytes, size, bytes.length - size);
+        }
+
+        @Override
+        public void writeBuffer(int length) {
+            size += length;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) {
+            ensureCapacity(length);
+            System.arraycopy(buffer, offset, bytes, size, length);
+            size += length;
+        }
+
+        @Override
+        public void add(byte[] buffer, int offset, int length) {
+            write(buffer, offset, length);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
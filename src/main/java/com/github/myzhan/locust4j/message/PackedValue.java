@@ -0,0 +1,31 @@
+package com.github.myzhan.locust4j.message;
+
+/**
+ * A {@link PackedValue} holds a value packed in advance, it's written as it is when a message is packed.
+ *
+ * It lets large values like the stats of a report be packed straight from their source, without building
+ * intermediate maps and lists.
+ *
+ * @author myzhan
+ * @since 2.3.0
+ */
+public final class PackedValue {
+
+    private final byte[] bytes;
+
+    /**
+     * @param bytes exactly one msgpack value
+     */
+    public PackedValue(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PackedValue(%d bytes)", bytes.length);
+    }
+}
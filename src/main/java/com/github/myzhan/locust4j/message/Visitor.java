@@ -1,8 +1,6 @@
 package com.github.myzhan.locust4j.message;
 
 import java.io.IOException;
-import java.util.List;
-import java.util.Map;
 
 import org.msgpack.core.MessagePacker;
 
@@ -12,89 +10,47 @@ import org.msgpack.core.MessagePacker;
 public class Visitor {
 
     final MessagePacker packer;
+    private final CodecRegistry codecs;
 
     public Visitor(MessagePacker packer) {
+        this(packer, CodecRegistry.getDefault());
+    }
+
+    /**
+     * @param packer the packer to pack into
+     * @param codecs where to find the codecs of values
+     * @since 2.3.0
+     */
+    public Visitor(MessagePacker packer, CodecRegistry codecs) {
         this.packer = packer;
+        this.codecs = codecs;
     }
 
     public void visit(Object value) throws IOException {
         if (null == value) {
-            visitNull();
+            packer.packNil();
         } else if (value instanceof String) {
-            visitString(value);
+            packer.packString((String)value);
         } else if (value instanceof Integer) {
-            visitInt(value);
+            packer.packInt((Integer)value);
         } else if (value instanceof Long) {
-            visitLong(value);
+            packer.packLong((Long)value);
         } else if (value instanceof Boolean) {
-            visitBool(value);
+            packer.packBoolean((Boolean)value);
         } else if (value instanceof Float) {
-            visitFloat(value);
+            packer.packFloat((Float)value);
         } else if (value instanceof Double) {
-            visitDouble(value);
-        } else if (value instanceof Map) {
-            visitMap(value);
-        } else if (value instanceof List) {
-            visitList(value);
-        } else if (value instanceof LongIntMap) {
-            visitRps(value);
+            packer.packDouble((Double)value);
         } else {
-            throw new IOException("Cannot pack type unknown type:" + value.getClass().getSimpleName());
+            visitWithCodec(value);
         }
     }
 
-    private void visitNull() throws IOException {
-        this.packer.packNil();
-    }
-
-    private void visitString(Object value) throws IOException {
-        packer.packString((String)value);
-    }
-
-    private void visitInt(Object value) throws IOException {
-        packer.packInt((Integer)value);
-    }
-
-    private void visitLong(Object value) throws IOException {
-        packer.packLong((Long)value);
-    }
-
-    private void visitBool(Object value) throws IOException {
-        packer.packBoolean((Boolean)value);
-    }
-
-    private void visitFloat(Object value) throws IOException {
-        packer.packFloat((Float)value);
-    }
-
-    private void visitDouble(Object value) throws IOException {
-        packer.packDouble((Double)value);
-    }
-
-    private void visitMap(Object value) throws IOException {
-        Map<String, Object> map = (Map<String, Object>)value;
-        packer.packMapHeader(map.size());
-        for (Map.Entry<String, Object> entry : map.entrySet()) {
-            this.visitString(entry.getKey());
-            this.visit(entry.getValue());
-        }
-    }
-
-    private void visitList(Object value) throws IOException {
-        List<Object> list = (List<Object>)value;
-        packer.packArrayHeader(list.size());
-        for (Object object : list) {
-            this.visit(object);
-        }
-    }
-
-    private void visitRps(Object value) throws IOException {
-        LongIntMap longIntMap = (LongIntMap)value;
-        packer.packMapHeader(longIntMap.internalStore.size());
-
-        for (Map.Entry<Long, Integer> entry : longIntMap.internalStore.entrySet()) {
-            packer.packLong(entry.getKey());
-            packer.packInt(entry.getValue());
+    private void visitWithCodec(Object value) throws IOException {
+        Codec<Object> codec = codecs.lookup(value.getClass());
+        if (null == codec) {
+            throw new IOException("Cannot pack type unknown type:" + value.getClass().getSimpleName());
         }
+        codec.pack(packer, value, this);
     }
 }
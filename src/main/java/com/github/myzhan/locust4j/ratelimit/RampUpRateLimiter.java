@@ -6,6 +6,9 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.myzhan.locust4j.utils.Clock;
+import com.github.myzhan.locust4j.utils.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,6 +16,8 @@ import org.slf4j.LoggerFactory;
  * A {@link RampUpRateLimiter} distributes permits at a ramp-up rate, in steps.
  * Each {@link #acquire()} blocks until a permit is available.
  *
+ * The threshold is derived from the time elapsed since {@link #start()}, measured by a {@link Clock}.
+ *
  * @author myzhan
  * @since 1.0.4
  */
@@ -21,8 +26,9 @@ public class RampUpRateLimiter extends AbstractRateLimiter {
     private static final Logger logger = LoggerFactory.getLogger(RampUpRateLimiter.class);
 
     private final long maxThreshold;
-    private final AtomicLong nextThreshold;
     private final AtomicLong threshold;
+    private final Clock clock;
+    private long startNanos;
 
     private final long rampUpStep;
     private final long rampUpPeriod;
@@ -32,7 +38,6 @@ public class RampUpRateLimiter extends AbstractRateLimiter {
     private final TimeUnit refillUnit;
 
     private ScheduledExecutorService bucketUpdater;
-    private ScheduledExecutorService thresholdUpdater;
     private final Object lock = new Object();
     private final AtomicBoolean stopped;
 
@@ -48,9 +53,26 @@ public class RampUpRateLimiter extends AbstractRateLimiter {
      */
     public RampUpRateLimiter(long maxThreshold, long rampUpStep, long rampUpPeriod, TimeUnit rampUpTimeUnit,
                              long refillPeriod, TimeUnit refillUnit) {
+        this(maxThreshold, rampUpStep, rampUpPeriod, rampUpTimeUnit, refillPeriod, refillUnit, Utils.getClock());
+    }
+
+    /**
+     * Creates a {@code RampUpRateLimiter} with a clock.
+     *
+     * @param maxThreshold   the max threshold that should not be overstepped.
+     * @param rampUpStep     the ramp-up step.
+     * @param rampUpPeriod   the duration of the period where the {@code RampUpRateLimiter} ramps up the threshold.
+     * @param rampUpTimeUnit the time unit.
+     * @param refillPeriod   the duration of the period where the {@code RampUpRateLimiter} updates the bucket.
+     * @param refillUnit     the time unit.
+     * @param clock          the clock measuring the ramp-up periods.
+     * @since 2.3.0
+     */
+    public RampUpRateLimiter(long maxThreshold, long rampUpStep, long rampUpPeriod, TimeUnit rampUpTimeUnit,
+                             long refillPeriod, TimeUnit refillUnit, Clock clock) {
         this.maxThreshold = maxThreshold;
         this.threshold = new AtomicLong(0);
-        this.nextThreshold = new AtomicLong(0);
+        this.clock = clock;
         this.rampUpStep = rampUpStep;
         this.rampUpPeriod = rampUpPeriod;
         this.rampUpTimeUnit = rampUpTimeUnit;
@@ -61,50 +83,50 @@ public class RampUpRateLimiter extends AbstractRateLimiter {
 
     @Override
     public void start() {
-        thresholdUpdater = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
-            @Override
-            public Thread newThread(Runnable r) {
-                Thread thread = new Thread(r);
-                thread.setName("StableRateLimiter-threshold-updater");
-                return thread;
-            }
-        });
-        thresholdUpdater.scheduleAtFixedRate(new Runnable() {
-            @Override
-            public void run() {
-                long nextValue = nextThreshold.get() + rampUpStep;
-                if (nextValue < 0) {
-                    // long value overflow
-                    nextValue = Long.MAX_VALUE;
-                }
-                if (nextValue > maxThreshold) {
-                    nextValue = maxThreshold;
-                }
-                nextThreshold.set(nextValue);
-            }
-        }, 0, rampUpPeriod, rampUpTimeUnit);
+        startNanos = clock.nanoTime();
 
         bucketUpdater = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
             @Override
             public Thread newThread(Runnable r) {
                 Thread thread = new Thread(r);
-                thread.setName("StableRateLimiter-bucket-updater");
+                thread.setName("RampUpRateLimiter-bucket-updater");
                 return thread;
             }
         });
         bucketUpdater.scheduleAtFixedRate(new Runnable() {
             @Override
             public void run() {
-                synchronized (lock) {
-                    threshold.set(nextThreshold.get());
-                    lock.notifyAll();
-                }
+                refill();
             }
         }, 0, refillPeriod, refillUnit);
 
         stopped.set(false);
     }
 
+    /**
+     * The threshold is increased by a step at the beginning of every ramp-up period, until it reaches the max.
+     *
+     * @return the threshold at this moment
+     */
+    long currentThreshold() {
+        long elapsedPeriods = (clock.nanoTime() - startNanos) / rampUpTimeUnit.toNanos(rampUpPeriod);
+        long value;
+        try {
+            value = Math.multiplyExact(rampUpStep, elapsedPeriods + 1);
+        } catch (ArithmeticException ex) {
+            // long value overflow
+            value = Long.MAX_VALUE;
+        }
+        return Math.min(value, maxThreshold);
+    }
+
+    void refill() {
+        synchronized (lock) {
+            threshold.set(currentThreshold());
+            lock.notifyAll();
+        }
+    }
+
     @Override
     public boolean acquire() {
         long permit = this.threshold.decrementAndGet();
@@ -124,7 +146,6 @@ public class RampUpRateLimiter extends AbstractRateLimiter {
     @Override
     public void stop() {
         bucketUpdater.shutdownNow();
-        thresholdUpdater.shutdownNow();
         stopped.set(true);
     }
 
@@ -1,10 +1,19 @@
 package com.github.myzhan.locust4j.rpc;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.github.myzhan.locust4j.message.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.zeromq.SocketType;
 import org.zeromq.ZMQ;
 import org.zeromq.ZMQException;
 
@@ -14,19 +23,44 @@ import org.zeromq.ZMQException;
  *
  * Locust4j only supports zeromq.
  *
+ * ZeroMQ sockets are not thread-safe, so the socket is only used by an I/O thread, which polls it together with a
+ * wakeup pipe. Messages are packed by the threads sending them and queued, then the wakeup pipe is written to tell
+ * the I/O thread to send them. Received messages are queued for {@link #recv()}.
+ *
  * @author myzhan
  */
 public class ZeromqClient implements Client {
 
     private static final Logger logger = LoggerFactory.getLogger(ZeromqClient.class);
 
+    /**
+     * Put into the received messages when the I/O thread exits.
+     */
+    private static final Message CLOSED = new Message("closed", null, -1, null);
+    /**
+     * How long to wait before sending again if the socket can't take more messages, in millis.
+     */
+    private static final long RETRY_INTERVAL = 10;
+    /**
+     * How long close() waits for the queued messages to be sent, in millis.
+     */
+    private static final long CLOSE_TIMEOUT = 1000;
+
     private final ZMQ.Context context = ZMQ.context(1);
     private final String identity;
     private final ZMQ.Socket dealerSocket;
 
+    private final Queue<byte[]> outgoing = new ConcurrentLinkedQueue<>();
+    private final BlockingQueue<Message> incoming = new LinkedBlockingQueue<>();
+    private final Pipe wakeupPipe;
+    private final AtomicBoolean wakeupPending = new AtomicBoolean(false);
+    private final Thread ioThread;
+    private volatile boolean closed = false;
+    private volatile IOException failure;
+
     public ZeromqClient(String host, int port, String nodeID) {
         this.identity = nodeID;
-        this.dealerSocket = context.socket(ZMQ.DEALER);
+        this.dealerSocket = context.socket(SocketType.DEALER);
         this.dealerSocket.setIdentity(this.identity.getBytes());
         boolean connected = this.dealerSocket.connect(String.format("tcp://%s:%d", host, port));
         if (connected) {
@@ -35,28 +69,153 @@ public class ZeromqClient implements Client {
             logger.debug("Locust4j isn't connected to master({}:{}), please check your network situation", host, port);
         }
 
+        try {
+            this.wakeupPipe = Pipe.open();
+            this.wakeupPipe.source().configureBlocking(false);
+        } catch (IOException ex) {
+            dealerSocket.close();
+            context.close();
+            throw new IllegalStateException("Failed to open the wakeup pipe of ZeroMQ client", ex);
+        }
+
+        this.ioThread = new Thread(new IOLoop());
+        this.ioThread.setName("locust4j-zeromq-io");
+        this.ioThread.setDaemon(true);
+        this.ioThread.start();
     }
 
     @Override
     public Message recv() throws IOException {
+        Message message;
         try {
-            byte[] bytes = this.dealerSocket.recv();
-            return new Message(bytes);
-        } catch (ZMQException ex) {
-            throw new IOException("Failed to receive ZeroMQ message", ex);
+            message = incoming.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while receiving ZeroMQ message");
+        }
+        if (message == CLOSED) {
+            // keep it for other threads receiving
+            incoming.offer(CLOSED);
+            if (null != failure) {
+                throw failure;
+            }
+            throw new IOException("ZeroMQ client is closed");
         }
+        return message;
     }
 
     @Override
     public void send(Message message) throws IOException {
-        byte[] bytes = message.getBytes();
-        this.dealerSocket.send(bytes);
+        if (closed) {
+            throw new IOException("ZeroMQ client is closed");
+        }
+        outgoing.offer(message.getBytes());
+        wakeUp();
+    }
+
+    /**
+     * Only the first caller since the I/O thread last woke up writes to the pipe.
+     */
+    private void wakeUp() throws IOException {
+        if (wakeupPending.compareAndSet(false, true)) {
+            wakeupPipe.sink().write(ByteBuffer.wrap(new byte[] {1}));
+        }
     }
 
     @Override
     public void close() {
-        dealerSocket.close();
-        context.close();
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            wakeupPipe.sink().write(ByteBuffer.wrap(new byte[] {1}));
+            ioThread.join(CLOSE_TIMEOUT);
+        } catch (IOException ex) {
+            logger.error("Failed to wake up the I/O thread of ZeroMQ client", ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
     }
-}
 
+    private class IOLoop implements Runnable {
+
+        private final ByteBuffer wakeups = ByteBuffer.allocate(64);
+        /**
+         * A message the socket couldn't take, it's sent before the queued ones.
+         */
+        private byte[] pending;
+
+        @Override
+        public void run() {
+            ZMQ.Poller poller = context.poller(2);
+            int socketIndex = poller.register(dealerSocket, ZMQ.Poller.POLLIN);
+            int wakeupIndex = poller.register(wakeupPipe.source(), ZMQ.Poller.POLLIN);
+            try {
+                while (!closed) {
+                    poller.poll(null == pending ? -1 : RETRY_INTERVAL);
+                    if (poller.pollin(wakeupIndex)) {
+                        drainWakeups();
+                    }
+                    if (poller.pollin(socketIndex)) {
+                        receiveAll();
+                    }
+                    sendAll();
+                }
+                sendAll();
+            } catch (ZMQException ex) {
+                failure = new IOException("Failed to use ZeroMQ socket", ex);
+                closed = true;
+            } catch (IOException ex) {
+                failure = ex;
+                closed = true;
+            } finally {
+                incoming.offer(CLOSED);
+                poller.close();
+                dealerSocket.close();
+                context.close();
+                closePipe();
+            }
+        }
+
+        private void drainWakeups() throws IOException {
+            while (wakeupPipe.source().read(wakeups) > 0) {
+                wakeups.clear();
+            }
+            // clear before sending, so messages queued from now on wake up the loop again
+            wakeupPending.set(false);
+        }
+
+        private void receiveAll() {
+            byte[] bytes;
+            while (null != (bytes = dealerSocket.recv(ZMQ.DONTWAIT))) {
+                try {
+                    incoming.offer(new Message(bytes));
+                } catch (IOException ex) {
+                    logger.error("Drop a malformed message from master", ex);
+                }
+            }
+        }
+
+        private void sendAll() {
+            byte[] bytes = null != pending ? pending : outgoing.poll();
+            while (null != bytes) {
+                if (!dealerSocket.send(bytes, ZMQ.DONTWAIT)) {
+                    pending = bytes;
+                    return;
+                }
+                bytes = outgoing.poll();
+            }
+            pending = null;
+        }
+
+        private void closePipe() {
+            try {
+                wakeupPipe.source().close();
+                wakeupPipe.sink().close();
+            } catch (IOException ex) {
+                logger.debug("Failed to close the wakeup pipe of ZeroMQ client", ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.github.myzhan.locust4j.runtime;
+
+import com.github.myzhan.locust4j.message.Message;
+
+/**
+ * A {@link MessageHandler} handles custom messages sent by the master, like the handlers registered by
+ * register_message of locust.
+ *
+ * Handlers are called one message at a time by a thread of their own, so a slow handler delays the following
+ * custom messages, but never the messages of locust itself.
+ *
+ * @author myzhan
+ * @since 2.3.0
+ */
+public interface MessageHandler {
+
+    /**
+     * @param message the custom message, its data is decoded when it's asked for, it may be any value rather than a
+     *                map, see {@link Message#getPayload()}
+     * @throws Exception which is logged and doesn't affect other messages
+     */
+    void onMessage(Message message) throws Exception;
+}
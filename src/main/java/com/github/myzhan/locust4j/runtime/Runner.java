@@ -90,6 +90,14 @@ public class Runner {
      * Thread pool used by runner to receive and send message
      */
     private ExecutorService executor;
+    /**
+     * Thread used by runner to call the handlers of custom messages.
+     */
+    private ExecutorService messageHandlerExecutor;
+    /**
+     * Handlers of custom messages, by message type.
+     */
+    private final Map<String, MessageHandler> messageHandlers = new ConcurrentHashMap<>();
     /**
      * Stats collect successes and failures.
      */
@@ -139,6 +147,66 @@ public class Runner {
         this.tasks = tasks;
     }
 
+    /**
+     * Register the handler of a custom message type sent by the master.
+     *
+     * @param type    the message type
+     * @param handler the handler
+     * @throws IllegalArgumentException if it's a message type of locust, or it already has a handler
+     * @since 2.3.0
+     */
+    public void registerMessageHandler(String type, MessageHandler handler) {
+        if (isLocustMessageType(type)) {
+            throw new IllegalArgumentException(type + " is a message type of locust");
+        }
+        if (null != this.messageHandlers.putIfAbsent(type, handler)) {
+            throw new IllegalArgumentException(type + " already has a handler");
+        }
+    }
+
+    /**
+     * @param type the message type
+     * @return true if messages of the type are handled by the runner itself
+     * @since 2.3.0
+     */
+    public static boolean isLocustMessageType(String type) {
+        switch (type) {
+            case "ack":
+            case "spawn":
+            case "spawning_complete":
+            case "stop":
+            case "heartbeat":
+            case "quit":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Send a custom message to the master, which is handled by the listener registered by register_message.
+     *
+     * @param type the message type
+     * @param data the message data
+     * @throws IOException if the message can't be sent
+     * @since 2.3.0
+     */
+    public void sendMessage(String type, Map<String, Object> data) throws IOException {
+        sendMessage(type, (Object) data);
+    }
+
+    /**
+     * Send a custom message of any data to the master, like a list, a string or a number.
+     *
+     * @param type the message type
+     * @param data the message data, packed by the {@link com.github.myzhan.locust4j.message.Visitor}
+     * @throws IOException if the message can't be sent
+     * @since 2.3.0
+     */
+    public void sendMessage(String type, Object data) throws IOException {
+        this.rpcClient.send(new Message(type, data, -1, this.nodeID));
+    }
+
     protected void setTaskExecutor(ThreadPoolExecutor taskExecutor) {
         this.taskExecutor = taskExecutor;
     }
@@ -195,6 +263,10 @@ public class Runner {
 
             this.numClients += runningTasks.size();
         }
+
+        if (null != this.stats) {
+            this.stats.setUserCount(this.numClients);
+        }
     }
 
     protected void startSpawning(int spawnCount) {
@@ -241,6 +313,7 @@ public class Runner {
             this.rpcClient.send(new Message("quit", null, -1, this.nodeID));
             this.rpcClient.close();
             this.executor.shutdownNow();
+            this.messageHandlerExecutor.shutdownNow();
         } catch (IOException ex) {
             logger.error("Error while sending a message about quiting", ex);
         }
@@ -261,26 +334,30 @@ public class Runner {
     }
 
     private boolean spawnMessageIsValid(Message message) {
-        Map<String, Object> data = message.getData();
-        if (!data.containsKey("user_classes_count")) {
+        if (null == message.getField("user_classes_count")) {
             logger.debug("Invalid spawn message without user_classes_count, you may use a newer but incompatible version of locust.");
             return false;
         }
         return true;
     }
 
-    private int sumUsersAmount(Message message) {
-        Map<String, Integer> userClassesCount = (Map<String, Integer>) message.getData().get("user_classes_count");
+    /**
+     * Counts are decoded with the width sent by the master, like {@link Long} for counts of 65536 and more.
+     */
+    int sumUsersAmount(Message message) {
+        Map<?, ?> counts = (Map<?, ?>) message.getField("user_classes_count");
+        Map<String, Integer> userClassesCount = new LinkedHashMap<>(counts.size() * 2);
         int amount = 0;
-        for (Map.Entry<String, Integer> entry : userClassesCount.entrySet()) {
-            amount = amount + entry.getValue();
+        for (Map.Entry<?, ?> entry : counts.entrySet()) {
+            int count = ((Number) entry.getValue()).intValue();
+            userClassesCount.put((String) entry.getKey(), count);
+            amount = amount + count;
         }
         this.userClassesCountFromMaster = userClassesCount;
         return amount;
     }
 
     private void onSpawnMessage(Message message) {
-        Map<String, Object> data = message.getData();
         int numUsers = sumUsersAmount(message);
 
         try {
@@ -290,10 +367,14 @@ public class Runner {
         }
 
         this.remoteParams.put("user_classes_count", this.userClassesCountFromMaster);
-        if (data.get("host") != null) {
-            this.remoteParams.put("host", data.get("host").toString());
+        Object host = message.getField("host");
+        if (host != null) {
+            this.remoteParams.put("host", host.toString());
         }
 
+        if (null != this.stats) {
+            this.stats.setSpawning(true);
+        }
         this.startSpawning(numUsers);
         this.spawnComplete();
     }
@@ -314,7 +395,12 @@ public class Runner {
                 logger.debug("Got quit message from master, shutting down...");
                 System.exit(0);
             default:
-                logger.error("Got {} message from master, which is not supported, please report an issue to locust4j.", type);
+                MessageHandler handler = this.messageHandlers.get(type);
+                if (null != handler) {
+                    this.dispatchMessage(handler, message);
+                } else {
+                    logger.error("Got {} message from master, which is not supported, please report an issue to locust4j.", type);
+                }
                 return;
         }
 
@@ -342,9 +428,9 @@ public class Runner {
                 this.waitForAck.countDown();
                 this.masterConnected = true;
 
-                Map<String, Object> data = message.getData();
-                if (data != null && data.containsKey("index")) {
-                    this.workerIndex = (int) data.get("index");
+                Object index = message.getField("index");
+                if (index != null) {
+                    this.workerIndex = ((Number) index).intValue();
                 }
             }
         } else if (this.state == RunnerState.Spawning || this.state == RunnerState.Running) {
@@ -396,6 +482,23 @@ public class Runner {
         }
     }
 
+    private void dispatchMessage(final MessageHandler handler, final Message message) {
+        try {
+            this.messageHandlerExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        handler.onMessage(message);
+                    } catch (Exception ex) {
+                        logger.error("Error while handling the {} message", message.getType(), ex);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            logger.debug("Drop the {} message, the runner is quitting", message.getType());
+        }
+    }
+
     public void getReady() {
         this.executor = new ThreadPoolExecutor(4, 4, 0L, TimeUnit.MILLISECONDS,
                 new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
@@ -404,6 +507,14 @@ public class Runner {
                 return new Thread(r);
             }
         });
+        this.messageHandlerExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r);
+                thread.setName("locust4j-message-handler");
+                return thread;
+            }
+        });
         this.state = RunnerState.Ready;
         try {
             this.rpcClient.send(new Message("client_ready", null, -1, this.nodeID));
@@ -0,0 +1,46 @@
+package com.github.myzhan.locust4j.stats;
+
+import java.util.regex.Pattern;
+
+/**
+ * An {@link ErrorNormalizer} rewrites error messages before they are counted, so messages that only differ in things
+ * like request IDs or timestamps are counted as the same error.
+ *
+ * @author myzhan
+ * @since 2.3.0
+ */
+public interface ErrorNormalizer {
+
+    /**
+     * Keep error messages as they are.
+     */
+    ErrorNormalizer IDENTITY = new ErrorNormalizer() {
+        @Override
+        public String normalize(String error) {
+            return error;
+        }
+    };
+
+    /**
+     * Replace UUIDs with "{uuid}", long hex strings with "{hex}" and numbers with "{n}".
+     */
+    ErrorNormalizer MASK_IDS = new ErrorNormalizer() {
+        private final Pattern uuid = Pattern.compile(
+            "[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+        private final Pattern hex = Pattern.compile("\\b(?=[0-9a-fA-F]*[0-9])[0-9a-fA-F]{16,}\\b");
+        private final Pattern number = Pattern.compile("\\d+");
+
+        @Override
+        public String normalize(String error) {
+            String normalized = uuid.matcher(error).replaceAll("{uuid}");
+            normalized = hex.matcher(normalized).replaceAll("{hex}");
+            return number.matcher(normalized).replaceAll("{n}");
+        }
+    };
+
+    /**
+     * @param error the original error message, never null, a null message is passed as "null"
+     * @return the error message to count
+     */
+    String normalize(String error);
+}
@@ -0,0 +1,226 @@
+package com.github.myzhan.locust4j.stats;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A log-linear latency histogram with the same layout as HdrHistogram, it keeps every recorded value to the given
+ * number of significant digits, so high percentiles like p99.9 and p99.99 are answered without rounding the way
+ * locust does.
+ *
+ * Values are in micros, from 0 to one hour, larger values are counted as one hour. The buckets are allocated once,
+ * the memory used depends on the significant digits only, about 26KB for 2 digits and 184KB for 3 digits.
+ *
+ * It's thread-safe, so it can be queried while it's being recorded.
+ *
+ * @author myzhan
+ * @since 2.3.0
+ */
+public class LatencyHistogram {
+
+    public static final long HIGHEST_TRACKABLE_VALUE = TimeUnit.HOURS.toMicros(1);
+
+    private final int significantDigits;
+    private final int subBucketHalfCountMagnitude;
+    private final int subBucketHalfCount;
+    private final long subBucketMask;
+    private final int leadingZeroCountBase;
+    private final long[] counts;
+
+    private long totalCount;
+    private long totalValue;
+    private long minValue;
+    private long maxValue;
+
+    /**
+     * @param significantDigits number of significant decimal digits to keep, from 1 to 5
+     */
+    public LatencyHistogram(int significantDigits) {
+        if (significantDigits < 1 || significantDigits > 5) {
+            throw new IllegalArgumentException("significantDigits must be between 1 and 5, got " + significantDigits);
+        }
+        this.significantDigits = significantDigits;
+
+        long largestValueWithSingleUnitResolution = 2 * (long)Math.pow(10, significantDigits);
+        int subBucketCountMagnitude = 64 - Long.numberOfLeadingZeros(largestValueWithSingleUnitResolution - 1);
+        this.subBucketHalfCountMagnitude = subBucketCountMagnitude - 1;
+        int subBucketCount = 1 << subBucketCountMagnitude;
+        this.subBucketHalfCount = subBucketCount / 2;
+        this.subBucketMask = subBucketCount - 1;
+        this.leadingZeroCountBase = 64 - subBucketHalfCountMagnitude - 1;
+
+        int bucketCount = 1;
+        long smallestUntrackableValue = subBucketCount;
+        while (smallestUntrackableValue <= HIGHEST_TRACKABLE_VALUE) {
+            smallestUntrackableValue <<= 1;
+            bucketCount++;
+        }
+        this.counts = new long[(bucketCount + 1) * subBucketHalfCount];
+        this.minValue = Long.MAX_VALUE;
+    }
+
+    private LatencyHistogram(LatencyHistogram source) {
+        this.significantDigits = source.significantDigits;
+        this.subBucketHalfCountMagnitude = source.subBucketHalfCountMagnitude;
+        this.subBucketHalfCount = source.subBucketHalfCount;
+        this.subBucketMask = source.subBucketMask;
+        this.leadingZeroCountBase = source.leadingZeroCountBase;
+        this.counts = source.counts.clone();
+        this.totalCount = source.totalCount;
+        this.totalValue = source.totalValue;
+        this.minValue = source.minValue;
+        this.maxValue = source.maxValue;
+    }
+
+    private int countsIndex(long value) {
+        int bucketIndex = leadingZeroCountBase - Long.numberOfLeadingZeros(value | subBucketMask);
+        int subBucketIndex = (int)(value >>> bucketIndex);
+        return ((bucketIndex + 1) << subBucketHalfCountMagnitude) + (subBucketIndex - subBucketHalfCount);
+    }
+
+    private int bucketIndexOf(int index) {
+        return Math.max(0, (index >> subBucketHalfCountMagnitude) - 1);
+    }
+
+    private long valueFromIndex(int index) {
+        int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+        int subBucketIndex = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+        if (bucketIndex < 0) {
+            subBucketIndex -= subBucketHalfCount;
+            bucketIndex = 0;
+        }
+        return (long)subBucketIndex << bucketIndex;
+    }
+
+    private long highestEquivalentValue(int index) {
+        return valueFromIndex(index) + (1L << bucketIndexOf(index)) - 1;
+    }
+
+    /**
+     * @param value latency in micros
+     */
+    public void recordValue(long value) {
+        recordValue(value, 1);
+    }
+
+    /**
+     * @param value latency in micros
+     * @param count number of times the value is seen
+     */
+    public synchronized void recordValue(long value, long count) {
+        if (value < 0) {
+            value = 0;
+        } else if (value > HIGHEST_TRACKABLE_VALUE) {
+            value = HIGHEST_TRACKABLE_VALUE;
+        }
+        counts[countsIndex(value)] += count;
+        totalCount += count;
+        totalValue += value * count;
+        if (value < minValue) {
+            minValue = value;
+        }
+        if (value > maxValue) {
+            maxValue = value;
+        }
+    }
+
+    /**
+     * Add up the values recorded by another histogram, which may have a different precision.
+     *
+     * @param other the histogram to merge from
+     */
+    public void merge(LatencyHistogram other) {
+        LatencyHistogram snapshot = other.copy();
+        if (snapshot.totalCount == 0) {
+            return;
+        }
+        synchronized (this) {
+            if (snapshot.counts.length == counts.length && snapshot.significantDigits == significantDigits) {
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] += snapshot.counts[i];
+                }
+            } else {
+                for (int i = 0; i < snapshot.counts.length; i++) {
+                    if (snapshot.counts[i] != 0) {
+                        counts[countsIndex(snapshot.valueFromIndex(i))] += snapshot.counts[i];
+                    }
+                }
+            }
+            totalCount += snapshot.totalCount;
+            totalValue += snapshot.totalValue;
+            minValue = Math.min(minValue, snapshot.minValue);
+            maxValue = Math.max(maxValue, snapshot.maxValue);
+        }
+    }
+
+    /**
+     * @return a copy which isn't affected by further recording
+     */
+    public synchronized LatencyHistogram copy() {
+        return new LatencyHistogram(this);
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        totalValue = 0;
+        minValue = Long.MAX_VALUE;
+        maxValue = 0;
+    }
+
+    /**
+     * The value that the given percentage of the recorded values are smaller than or equivalent to.
+     * Equivalent values are within the precision of the histogram, and the result never exceeds the max value.
+     *
+     * @param percentile from 0 to 100
+     * @return latency in micros, or 0 if nothing is recorded
+     */
+    public synchronized long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        double requested = Math.min(Math.max(percentile, 0), 100);
+        long countAtPercentile = Math.max(1, (long)(requested / 100 * totalCount + 0.5));
+        long count = 0;
+        for (int i = 0; i < counts.length; i++) {
+            count += counts[i];
+            if (count == totalCount) {
+                // the largest value is known exactly
+                return maxValue;
+            }
+            if (count >= countAtPercentile) {
+                return Math.max(minValue, Math.min(highestEquivalentValue(i), maxValue));
+            }
+        }
+        return maxValue;
+    }
+
+    public int getSignificantDigits() {
+        return significantDigits;
+    }
+
+    public synchronized long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return min latency in micros, or 0 if nothing is recorded
+     */
+    public synchronized long getMinValue() {
+        return totalCount == 0 ? 0 : minValue;
+    }
+
+    /**
+     * @return max latency in micros
+     */
+    public synchronized long getMaxValue() {
+        return maxValue;
+    }
+
+    /**
+     * @return mean latency in micros, or 0 if nothing is recorded
+     */
+    public synchronized double getMean() {
+        return totalCount == 0 ? 0 : (double)totalValue / totalCount;
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.myzhan.locust4j.stats;
+
+import java.util.regex.Pattern;
+
+/**
+ * A {@link NameNormalizer} rewrites request names before they are resolved to stats entries, so raw URLs like
+ * "/user/123" and "/user/456" are counted as the same entry. The results are cached, so it's not called for every
+ * record of the same name.
+ *
+ * @author myzhan
+ * @since 2.3.0
+ */
+public interface NameNormalizer {
+
+    /**
+     * Keep request names as they are.
+     */
+    NameNormalizer IDENTITY = new NameNormalizer() {
+        @Override
+        public String normalize(String name) {
+            return name;
+        }
+    };
+
+    /**
+     * Drop the query string, and replace path segments of numbers, UUIDs or long hex strings with "{id}".
+     */
+    NameNormalizer URL_TEMPLATE = new NameNormalizer() {
+        private final Pattern idSegment = Pattern.compile(
+            "(?<=/)(\\d+|[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}"
+                + "|(?=[0-9a-fA-F]*[0-9])[0-9a-fA-F]{16,})(?=/|$)");
+
+        @Override
+        public String normalize(String name) {
+            int query = name.indexOf('?');
+            if (query >= 0) {
+                name = name.substring(0, query);
+            }
+            return idSegment.matcher(name).replaceAll("{id}");
+        }
+    };
+
+    /**
+     * @param name the original request name, never null
+     * @return the request name to count
+     */
+    String normalize(String name);
+}
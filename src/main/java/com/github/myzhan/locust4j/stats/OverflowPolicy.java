@@ -0,0 +1,24 @@
+package com.github.myzhan.locust4j.stats;
+
+/**
+ * What to do with a record when the {@link SampleRingBuffer} is full.
+ *
+ * @author myzhan
+ * @since 2.3.0
+ */
+public enum OverflowPolicy {
+    /**
+     * The recording thread waits until the stats thread makes room for it.
+     */
+    BLOCK,
+
+    /**
+     * The record is dropped and counted, the count is reported to the master as dropped_samples.
+     */
+    DROP,
+
+    /**
+     * The recording thread aggregates the record by itself, like the striped mode does. Nothing is lost.
+     */
+    AGGREGATE,
+}
@@ -0,0 +1,154 @@
+package com.github.myzhan.locust4j.stats;
+
+import java.io.IOException;
+
+import com.github.myzhan.locust4j.message.LongIntMap;
+import org.msgpack.core.MessagePacker;
+
+/**
+ * A {@link PerSecondCounter} counts events per epoch second, like num_reqs_per_sec of locust.
+ *
+ * Only the few seconds since the last report are populated, so the counts are kept in a small circular array indexed
+ * by second % N, valid for N seconds from a base timestamp. Seconds out of the window go to a sparse map, which is
+ * only touched if the report interval is longer than the window or the clock goes backwards.
+ *
+ * @author myzhan
+ * @since 2.3.0
+ */
+public class PerSecondCounter {
+
+    private static final int WINDOW = 64;
+
+    private final int[] counts;
+    private final LongIntMap overflow;
+    /**
+     * The first second of the window, -1 if nothing is counted since the last clear.
+     */
+    private long base;
+    private long last;
+
+    public PerSecondCounter() {
+        this.counts = new int[WINDOW];
+        this.overflow = new LongIntMap();
+        this.base = -1;
+    }
+
+    private static int indexOf(long second) {
+        return (int) (second % WINDOW);
+    }
+
+    public void add(long second) {
+        this.add(second, 1);
+    }
+
+    /**
+     * @param second epoch second
+     * @param count  positive number of events
+     */
+    public void add(long second, int count) {
+        if (base < 0 && second >= 0) {
+            base = second;
+            last = second;
+        }
+        if (second >= base && second < base + WINDOW) {
+            counts[indexOf(second)] += count;
+            if (second > last) {
+                last = second;
+            }
+        } else {
+            overflow.add(second, count);
+        }
+    }
+
+    public void merge(PerSecondCounter other) {
+        if (other.base >= 0) {
+            for (long second = other.base; second <= other.last; second++) {
+                int count = other.counts[indexOf(second)];
+                if (count != 0) {
+                    this.add(second, count);
+                }
+            }
+        }
+        if (!other.overflow.isEmpty()) {
+            this.merge(other.overflow);
+        }
+    }
+
+    /**
+     * @param counts counts of epoch seconds
+     */
+    public void merge(LongIntMap counts) {
+        counts.forEach(new LongIntMap.EntryConsumer() {
+            @Override
+            public void accept(long key, int value) {
+                add(key, value);
+            }
+        });
+    }
+
+    /**
+     * Clear the counted seconds in place.
+     */
+    public void clear() {
+        if (base >= 0) {
+            for (long second = base; second <= last; second++) {
+                counts[indexOf(second)] = 0;
+            }
+            base = -1;
+        }
+        overflow.clear();
+    }
+
+    /**
+     * @return number of seconds with counts
+     */
+    public int size() {
+        int size = overflow.size();
+        if (base >= 0) {
+            for (long second = base; second <= last; second++) {
+                if (counts[indexOf(second)] != 0) {
+                    size++;
+                }
+            }
+        }
+        return size;
+    }
+
+    public void copyTo(LongIntMap map) {
+        if (base >= 0) {
+            for (long second = base; second <= last; second++) {
+                int count = counts[indexOf(second)];
+                if (count != 0) {
+                    map.add(second, count);
+                }
+            }
+        }
+        map.merge(overflow);
+    }
+
+    /**
+     * Pack the counts like {@link #toLongIntMap()}, without copying them.
+     *
+     * @param packer the packer to pack into
+     * @throws IOException if the packer fails to write
+     */
+    public void packTo(MessagePacker packer) throws IOException {
+        packer.packMapHeader(size());
+        if (base >= 0) {
+            for (long second = base; second <= last; second++) {
+                int count = counts[indexOf(second)];
+                if (count != 0) {
+                    packer.packLong(second);
+                    packer.packInt(count);
+                }
+            }
+        }
+        overflow.packEntries(packer);
+    }
+
+    public LongIntMap toLongIntMap() {
+        LongIntMap map = new LongIntMap(size());
+        copyTo(map);
+        return map;
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.myzhan.locust4j.stats;
+
+/**
+ * A {@link RequestTimer} measures a request with {@link System#nanoTime()} and records it when it's closed.
+ *
+ * <pre>
+ * try (RequestTimer timer = Locust.getInstance().startTimer("http", "GET /")) {
+ *     Response response = client.get("/");
+ *     if (response.code() != 200) {
+ *         timer.fail("unexpected status code");
+ *     }
+ *     timer.setContentLength(response.contentLength());
+ * }
+ * </pre>
+ *
+ * Timers are pooled by the thread that starts them and reused after closing, so timing a request allocates nothing.
+ * A timer must be closed by the thread that starts it, and must not be used after it's closed.
+ *
+ * @author myzhan
+ * @since 2.3.0
+ */
+public final class RequestTimer implements AutoCloseable {
+
+    private final StatsShard shard;
+    private StatsHandle handle;
+    private long startNanos;
+    private long contentLength;
+    private String error;
+
+    RequestTimer(StatsShard shard) {
+        this.shard = shard;
+    }
+
+    RequestTimer start(StatsHandle handle) {
+        this.handle = handle;
+        this.contentLength = 0;
+        this.error = null;
+        this.startNanos = System.nanoTime();
+        return this;
+    }
+
+    /**
+     * @param contentLength content length in bytes
+     */
+    public void setContentLength(long contentLength) {
+        this.contentLength = contentLength;
+    }
+
+    /**
+     * Mark the request as failed, it will be recorded as a failure when the timer is closed.
+     *
+     * @param error error message
+     */
+    public void fail(String error) {
+        this.error = error;
+    }
+
+    /**
+     * Stop timing and record the request, closing a timer twice records nothing.
+     */
+    @Override
+    public void close() {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        StatsHandle current = this.handle;
+        if (current == null) {
+            return;
+        }
+        this.handle = null;
+        if (error == null) {
+            shard.logRequestNanos(current, elapsedNanos, contentLength);
+        } else {
+            shard.logFailureNanos(current, elapsedNanos, error);
+            this.error = null;
+        }
+        shard.releaseTimer(this);
+    }
+}
@@ -0,0 +1,180 @@
+package com.github.myzhan.locust4j.stats;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.github.myzhan.locust4j.message.LongIntMap;
+import org.msgpack.core.MessagePacker;
+
+/**
+ * A {@link ResponseTimeHistogram} counts response times in the same buckets as locust does.
+ *
+ * Response times are exact below 100ms, rounded to 10ms below 1s, to 100ms below 10s and to 1s above, a tie is
+ * rounded down. Buckets up to 60s are kept in a flat array, the rest goes to a sparse map, so recording a response
+ * time costs a few integer operations.
+ *
+ * @author myzhan
+ * @since 2.3.0
+ */
+public class ResponseTimeHistogram {
+
+    private static final int FLAT_LIMIT = 60000;
+    private static final int BUCKETS = bucketIndex(FLAT_LIMIT) + 1;
+
+    private final int[] counts;
+    private final LongIntMap overflow;
+
+    public ResponseTimeHistogram() {
+        this.counts = new int[BUCKETS];
+        this.overflow = new LongIntMap();
+    }
+
+    /**
+     * Round a response time like locust does.
+     *
+     * @param responseTime response time in millis
+     * @return the rounded response time
+     */
+    public static long round(long responseTime) {
+        if (responseTime < 100) {
+            return responseTime;
+        } else if (responseTime < 1000) {
+            return roundHalfDown(responseTime, 10);
+        } else if (responseTime < 10000) {
+            return roundHalfDown(responseTime, 100);
+        } else {
+            return roundHalfDown(responseTime, 1000);
+        }
+    }
+
+    private static long roundHalfDown(long value, long step) {
+        long remainder = value % step;
+        return remainder * 2 > step ? value - remainder + step : value - remainder;
+    }
+
+    /**
+     * Only valid for rounded response times in [0, FLAT_LIMIT].
+     */
+    private static int bucketIndex(long rounded) {
+        if (rounded < 100) {
+            return (int) rounded;
+        } else if (rounded < 1000) {
+            return 100 + (int) (rounded - 100) / 10;
+        } else if (rounded < 10000) {
+            return 190 + (int) (rounded - 1000) / 100;
+        } else {
+            return 280 + (int) (rounded - 10000) / 1000;
+        }
+    }
+
+    private static long bucketKey(int index) {
+        if (index < 100) {
+            return index;
+        } else if (index < 190) {
+            return 100 + (index - 100) * 10L;
+        } else if (index < 280) {
+            return 1000 + (index - 190) * 100L;
+        } else {
+            return 10000 + (index - 280) * 1000L;
+        }
+    }
+
+    /**
+     * @param responseTime response time in millis, it will be rounded
+     */
+    public void add(long responseTime) {
+        this.add(responseTime, 1);
+    }
+
+    public void add(long responseTime, int count) {
+        long rounded = round(responseTime);
+        if (rounded >= 0 && rounded <= FLAT_LIMIT) {
+            counts[bucketIndex(rounded)] += count;
+        } else {
+            overflow.add(rounded, count);
+        }
+    }
+
+    public void merge(ResponseTimeHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        overflow.merge(other.overflow);
+    }
+
+    /**
+     * @param responseTimes counts of response times, they will be rounded
+     */
+    public void merge(LongIntMap responseTimes) {
+        responseTimes.forEach(new LongIntMap.EntryConsumer() {
+            @Override
+            public void accept(long key, int value) {
+                add(key, value);
+            }
+        });
+    }
+
+    public void clear() {
+        Arrays.fill(counts, 0);
+        overflow.clear();
+    }
+
+    /**
+     * @return number of rounded response times
+     */
+    public int size() {
+        int size = overflow.size();
+        for (int count : counts) {
+            if (count != 0) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Copy the counts into a map of rounded response time to count, which is what locust expects.
+     *
+     * @param map the map to copy into
+     */
+    public void copyTo(LongIntMap map) {
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] != 0) {
+                map.add(bucketKey(i), counts[i]);
+            }
+        }
+        map.merge(overflow);
+    }
+
+    public void forEach(LongIntMap.EntryConsumer consumer) {
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] != 0) {
+                consumer.accept(bucketKey(i), counts[i]);
+            }
+        }
+        overflow.forEach(consumer);
+    }
+
+    /**
+     * Pack the counts like {@link #toLongIntMap()}, without copying them.
+     *
+     * @param packer the packer to pack into
+     * @throws IOException if the packer fails to write
+     */
+    public void packTo(MessagePacker packer) throws IOException {
+        packer.packMapHeader(size());
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] != 0) {
+                packer.packLong(bucketKey(i));
+                packer.packInt(counts[i]);
+            }
+        }
+        overflow.packEntries(packer);
+    }
+
+    public LongIntMap toLongIntMap() {
+        LongIntMap map = new LongIntMap(size());
+        copyTo(map);
+        return map;
+    }
+}
@@ -0,0 +1,142 @@
+package com.github.myzhan.locust4j.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link SampleRingBuffer} is a bounded multi-producer single-consumer queue of records.
+ *
+ * All the slots are allocated up front and records are copied into them field by field, so offering a record
+ * allocates nothing. Each slot carries a sequence number, producers claim a slot by a CAS on the tail and publish
+ * it by advancing its sequence, the consumer frees it by advancing the sequence by one lap.
+ *
+ * @author myzhan
+ * @since 2.3.0
+ */
+public final class SampleRingBuffer {
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final StatsHandle[] handles;
+    private final long[] responseTimes;
+    private final long[] contentLengths;
+    private final String[] errors;
+
+    private final AtomicLong tail = new AtomicLong();
+    /**
+     * Only accessed by the consumer.
+     */
+    private long head;
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    public SampleRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity of the sample buffer must be positive");
+        }
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            this.sequences.set(i, i);
+        }
+        this.handles = new StatsHandle[this.capacity];
+        this.responseTimes = new long[this.capacity];
+        this.contentLengths = new long[this.capacity];
+        this.errors = new String[this.capacity];
+    }
+
+    public int capacity() {
+        return this.capacity;
+    }
+
+    /**
+     * @return approximate number of records in the buffer
+     */
+    public int size() {
+        long size = tail.get() - head;
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    public boolean isEmpty() {
+        long position = head;
+        return sequences.get((int) (position & mask)) != position + 1;
+    }
+
+    /**
+     * Copy a record into the buffer.
+     *
+     * @param handle        stats handle of the record
+     * @param responseTime  response time in millis
+     * @param contentLength content length in bytes
+     * @param error         error message, null for successful records
+     * @return false if the buffer is full
+     */
+    public boolean offer(StatsHandle handle, long responseTime, long contentLength, String error) {
+        long position = tail.get();
+        int index;
+        while (true) {
+            index = (int) (position & mask);
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (diff < 0) {
+                // the consumer hasn't freed this slot in the last lap
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+        handles[index] = handle;
+        responseTimes[index] = responseTime;
+        contentLengths[index] = contentLength;
+        errors[index] = error;
+        sequences.lazySet(index, position + 1);
+        return true;
+    }
+
+    /**
+     * Hand over at most limit records to the handler, must be called by a single consumer.
+     *
+     * @param handler receives the records in order
+     * @param limit   max number of records to drain
+     * @return number of drained records
+     */
+    public int drain(SampleHandler handler, int limit) {
+        int drained = 0;
+        while (drained < limit) {
+            long position = head;
+            int index = (int) (position & mask);
+            if (sequences.get(index) != position + 1) {
+                break;
+            }
+            StatsHandle handle = handles[index];
+            String error = errors[index];
+            handles[index] = null;
+            errors[index] = null;
+            handler.onSample(handle, responseTimes[index], contentLengths[index], error);
+            sequences.lazySet(index, position + capacity);
+            head = position + 1;
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * Receives the records drained from a {@link SampleRingBuffer}.
+     */
+    public interface SampleHandler {
+        /**
+         * @param handle        stats handle of the record
+         * @param responseTime  response time in millis
+         * @param contentLength content length in bytes
+         * @param error         error message, null for successful records
+         */
+        void onSample(StatsHandle handle, long responseTime, long contentLength, String error);
+    }
+}
@@ -1,12 +1,21 @@
 package com.github.myzhan.locust4j.stats;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -14,13 +23,29 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
+import com.github.myzhan.locust4j.message.MessageEncoder;
+import com.github.myzhan.locust4j.message.PackedValue;
+import com.github.myzhan.locust4j.utils.Clock;
 import com.github.myzhan.locust4j.utils.Utils;
+import org.msgpack.core.MessagePacker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Stats collects test results from reportSuccessQueue and reportFailureQueue and reports to Runner every 3 seconds.
+ * Stats collects test results from the sample buffer and reports to Runner every 3 seconds by default.
+ *
+ * The sample buffer is bounded, when it's full, records are handled by the {@link OverflowPolicy}, and the number of
+ * overflowed and dropped records are reported to the master along with the stats.
+ *
+ * In the striped mode, records bypass the queues and are aggregated by the recording threads into their own
+ * {@link StatsShard}, which are merged when it's time to report.
+ *
+ * Records are aggregated into the active {@link StatsBuffer}. When it's time to report, the stats thread swaps it
+ * with the spare one and goes on, the retired buffer is serialized and reset by the reporter thread, then recycled
+ * as the spare one, so reporting never pauses recording.
  *
  * @author myzhan
  */
@@ -28,9 +53,21 @@ public class Stats implements Runnable {
 
     private static final Logger logger = LoggerFactory.getLogger(Stats.class);
 
-    private Map<String, StatsEntry> entries;
-    private Map<String, StatsError> errors;
-    private StatsEntry total;
+    private StatsBuffer active;
+    private final BlockingQueue<StatsBuffer> spareBuffers;
+    private final BlockingQueue<StatsBuffer> retiredBuffers;
+    private volatile int maxErrors;
+    private volatile ErrorNormalizer errorNormalizer;
+    private volatile boolean errorsWithClassName;
+
+    /**
+     * Latency histograms of the whole run by request type and name, merged from the retired buffers. They're keyed
+     * by name rather than by handle id, so they're kept when entries are evicted.
+     */
+    private final Object latencyLock = new Object();
+    private volatile int latencyHistogramDigits;
+    private final Map<String, Map<String, LatencyHistogram>> latencyHistograms;
+    private LatencyHistogram totalLatencyHistogram;
 
     private final ConcurrentLinkedQueue<RequestSuccess> reportSuccessQueue;
     private final ConcurrentLinkedQueue<RequestFailure> reportFailureQueue;
@@ -38,9 +75,79 @@ public class Stats implements Runnable {
     private final ConcurrentLinkedQueue<Boolean> timeToReportQueue;
     private final BlockingQueue<Map<String, Object>> messageToRunnerQueue;
 
+    private static final int MESSAGE_TO_RUNNER_QUEUE_SIZE = 128;
+    private static final int DRAIN_BATCH_SIZE = 1024;
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    /**
+     * Allocated by the first record, so creating stats stays cheap, a large buffer takes tens of millis to build.
+     */
+    private volatile SampleRingBuffer sampleBuffer;
+    private volatile int sampleBufferSize;
+    private final SampleRingBuffer.SampleHandler sampleHandler;
+    private volatile OverflowPolicy overflowPolicy;
+    private final AtomicLong overflowedSamples;
+    private final AtomicLong droppedSamples;
+
+    private volatile boolean striped;
+    private final ConcurrentMap<String, ConcurrentMap<String, StatsHandle>> handles;
+    private int handleNumber;
+    private int liveHandles;
+    private final ArrayDeque<Integer> freeHandleIds;
+    /**
+     * Ids of evicted handles are reused after the next report, when the shards have handed over their last records.
+     */
+    private final List<Integer> evictedHandleIds;
+    private volatile int maxEntries;
+    private volatile int evictIdleReports;
+    /**
+     * The last report with any request of every handle id, only accessed when reporting.
+     */
+    private long reportNumber;
+    private long[] lastActiveReports;
+    private final ConcurrentLinkedQueue<Integer> idleHandleIds;
+    private volatile NameNormalizer nameNormalizer;
+    /**
+     * Normalized names by raw name, read without locking by the recording threads. It's cleared when it's full,
+     * names seen again are cached again.
+     */
+    private static final int NAME_CACHE_SIZE = 4096;
+    private final ConcurrentMap<String, String> nameCache;
+    private final List<StatsShard> shards;
+    private final ThreadLocal<StatsShard> localShard;
+
+    /**
+     * In the adaptive mode, the report interval is lengthened by one base interval for every
+     * {@link #ADAPTIVE_REPORT_SIZE_STEP} entries and errors of the last report, up to
+     * {@link #MAX_ADAPTIVE_REPORT_INTERVAL}, and shortened to {@link #SPAWNING_REPORT_INTERVAL} during spawning.
+     */
+    private static final int ADAPTIVE_REPORT_SIZE_STEP = 500;
+    private static final long MAX_ADAPTIVE_REPORT_INTERVAL = 10000;
+    private static final long SPAWNING_REPORT_INTERVAL = 1000;
+    private volatile int sampleRate;
+    private volatile long sampleBudget;
+    private long lastReportMillis;
+    private volatile long reportInterval;
+    private volatile boolean adaptiveReportInterval;
+    private volatile boolean spawning;
+    private volatile int lastReportSize;
+
+    private volatile String historyFile;
+    private volatile StatsHistoryWriter historyWriter;
+    private volatile int userCount;
+    /**
+     * Reused by the reporter thread to pack the stats of every report.
+     */
+    private MessageEncoder reportEncoder;
+
     private ExecutorService threadPool;
     private final AtomicInteger threadNumber;
-    private final Object lock = new Object();
+
+    /**
+     * The stats thread parks itself when all the queues are empty, and producers only unpark it when it's idle.
+     */
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private volatile Thread consumer;
+    private volatile boolean idle;
 
     /**
      * Probably, you don't need to create Stats unless you are writing unit tests.
@@ -50,13 +157,68 @@ public class Stats implements Runnable {
         reportFailureQueue = new ConcurrentLinkedQueue<>();
         clearStatsQueue = new ConcurrentLinkedQueue<>();
         timeToReportQueue = new ConcurrentLinkedQueue<>();
-        messageToRunnerQueue = new LinkedBlockingDeque<>();
+        messageToRunnerQueue = new LinkedBlockingDeque<>(MESSAGE_TO_RUNNER_QUEUE_SIZE);
+        sampleBufferSize = Integer.parseInt(Utils.getSystemEnvWithDefault("LOCUST_STATS_BUFFER_SIZE", "65536"));
+        sampleHandler = new SampleRingBuffer.SampleHandler() {
+            @Override
+            public void onSample(StatsHandle handle, long responseTime, long contentLength, String error) {
+                if (null == error) {
+                    logRequest(handle, responseTime, contentLength);
+                } else {
+                    logRequest(handle, responseTime, 0);
+                    logError(handle, error);
+                }
+            }
+        };
+        overflowPolicy = OverflowPolicy.valueOf(
+            Utils.getSystemEnvWithDefault("LOCUST_STATS_OVERFLOW_POLICY", "AGGREGATE").toUpperCase());
+        overflowedSamples = new AtomicLong();
+        droppedSamples = new AtomicLong();
         threadNumber = new AtomicInteger();
+        handles = new ConcurrentHashMap<>(8);
+        freeHandleIds = new ArrayDeque<>();
+        lastActiveReports = new long[16];
+        idleHandleIds = new ConcurrentLinkedQueue<>();
+        evictedHandleIds = new ArrayList<>();
+        maxEntries = Integer.parseInt(Utils.getSystemEnvWithDefault("LOCUST_STATS_MAX_ENTRIES", "10000"));
+        evictIdleReports = Integer.parseInt(Utils.getSystemEnvWithDefault("LOCUST_STATS_EVICT_IDLE_REPORTS", "0"));
+        nameNormalizer = NameNormalizer.IDENTITY;
+        nameCache = new ConcurrentHashMap<>(64);
+        shards = new CopyOnWriteArrayList<>();
+        localShard = new ThreadLocal<StatsShard>() {
+            @Override
+            protected StatsShard initialValue() {
+                StatsShard shard = new StatsShard(Thread.currentThread());
+                shards.add(shard);
+                return shard;
+            }
+        };
+
+        sampleRate = Integer.parseInt(Utils.getSystemEnvWithDefault("LOCUST_STATS_SAMPLE_RATE", "1"));
+        sampleBudget = Long.parseLong(Utils.getSystemEnvWithDefault("LOCUST_STATS_SAMPLE_BUDGET", "0"));
+        lastReportMillis = Utils.now();
+        reportInterval = Long.parseLong(Utils.getSystemEnvWithDefault("LOCUST_STATS_REPORT_INTERVAL", "3000"));
+        adaptiveReportInterval = Boolean.parseBoolean(
+            Utils.getSystemEnvWithDefault("LOCUST_STATS_ADAPTIVE_REPORT_INTERVAL", "false"));
+        historyFile = Utils.getSystemEnvWithDefault("LOCUST_STATS_HISTORY_FILE", null);
+
+        latencyHistogramDigits = Integer.parseInt(
+            Utils.getSystemEnvWithDefault("LOCUST_STATS_HISTOGRAM_DIGITS", "0"));
+
+        maxErrors = Integer.parseInt(Utils.getSystemEnvWithDefault("LOCUST_STATS_MAX_ERRORS", "1000"));
+        errorNormalizer = ErrorNormalizer.IDENTITY;
+        errorsWithClassName = Boolean.parseBoolean(
+            Utils.getSystemEnvWithDefault("LOCUST_STATS_ERRORS_WITH_CLASS_NAME", "false"));
+
+        latencyHistograms = new LinkedHashMap<>();
+        if (latencyHistogramDigits > 0) {
+            totalLatencyHistogram = new LatencyHistogram(latencyHistogramDigits);
+        }
 
-        this.entries = new HashMap<>(8);
-        this.errors = new HashMap<>(8);
-        this.total = new StatsEntry("Total");
-        this.total.reset();
+        this.active = new StatsBuffer(this);
+        this.spareBuffers = new ArrayBlockingQueue<>(1);
+        this.spareBuffers.offer(new StatsBuffer(this));
+        this.retiredBuffers = new ArrayBlockingQueue<>(1);
     }
 
     public static Stats getInstance() {
@@ -64,7 +226,14 @@ public class Stats implements Runnable {
     }
 
     public void start() {
-        threadPool = new ThreadPoolExecutor(2, Integer.MAX_VALUE, 0L, TimeUnit.MILLISECONDS,
+        if (null != historyFile) {
+            try {
+                historyWriter = new StatsHistoryWriter(new File(historyFile));
+            } catch (IOException ex) {
+                logger.error("Failed to open the stats history file {}, the history is not written", historyFile, ex);
+            }
+        }
+        threadPool = new ThreadPoolExecutor(null == historyWriter ? 3 : 4, Integer.MAX_VALUE, 0L, TimeUnit.MILLISECONDS,
             new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
             @Override
             public Thread newThread(Runnable r) {
@@ -75,21 +244,115 @@ public class Stats implements Runnable {
         });
 
         threadPool.submit(new StatsTimer(this));
+        threadPool.submit(new StatsReporter(this));
         threadPool.submit(this);
+        if (null != historyWriter) {
+            threadPool.submit(historyWriter);
+        }
     }
 
     public void stop() {
         threadPool.shutdownNow();
     }
 
+    /**
+     * @deprecated Since 2.3.0, records are sent to the sample buffer, this queue is still drained but unbounded.
+     */
+    @Deprecated
     public Queue<RequestSuccess> getReportSuccessQueue() {
         return this.reportSuccessQueue;
     }
 
+    /**
+     * @deprecated Since 2.3.0, records are sent to the sample buffer, this queue is still drained but unbounded.
+     */
+    @Deprecated
     public Queue<RequestFailure> getReportFailureQueue() {
         return this.reportFailureQueue;
     }
 
+    public SampleRingBuffer getSampleBuffer() {
+        SampleRingBuffer buffer = this.sampleBuffer;
+        if (null == buffer) {
+            synchronized (this) {
+                buffer = this.sampleBuffer;
+                if (null == buffer) {
+                    buffer = new SampleRingBuffer(this.sampleBufferSize);
+                    this.sampleBuffer = buffer;
+                }
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Replace the sample buffer with a new one, it should be called before the stats thread starts.
+     *
+     * @param size max number of records waiting for the stats thread, rounded up to a power of two
+     * @since 2.3.0
+     */
+    public synchronized void setSampleBufferSize(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("The capacity of the sample buffer must be positive");
+        }
+        this.sampleBufferSize = size;
+        this.sampleBuffer = null;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return this.overflowPolicy;
+    }
+
+    /**
+     * @param overflowPolicy what to do with records when the sample buffer is full
+     * @since 2.3.0
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Send a record to the stats thread through the sample buffer.
+     *
+     * @param handle        stats handle of the record
+     * @param responseTime  response time in millis
+     * @param contentLength content length in bytes
+     * @param error         error message, null for successful records
+     * @since 2.3.0
+     */
+    public void record(StatsHandle handle, long responseTime, long contentLength, String error) {
+        SampleRingBuffer buffer = getSampleBuffer();
+        if (buffer.offer(handle, responseTime, contentLength, error)) {
+            wakeMeUp();
+            return;
+        }
+
+        overflowedSamples.incrementAndGet();
+        switch (overflowPolicy) {
+            case BLOCK:
+                do {
+                    wakeMeUp();
+                    LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+                    if (Thread.currentThread().isInterrupted()) {
+                        droppedSamples.incrementAndGet();
+                        return;
+                    }
+                } while (!buffer.offer(handle, responseTime, contentLength, error));
+                wakeMeUp();
+                break;
+            case DROP:
+                droppedSamples.incrementAndGet();
+                break;
+            default:
+                if (null == error) {
+                    handle.success(responseTime, contentLength);
+                } else {
+                    handle.failure(responseTime, error);
+                }
+                break;
+        }
+    }
+
     public Queue<Boolean> getClearStatsQueue() {
         return this.clearStatsQueue;
     }
@@ -98,20 +361,562 @@ public class Stats implements Runnable {
         return this.messageToRunnerQueue;
     }
 
+    /**
+     * In the striped mode, every thread aggregates its own records instead of sending them to the queues,
+     * so recording scales with the number of cores.
+     *
+     * @param striped enable the striped mode or not
+     * @since 2.3.0
+     */
+    public void setStriped(boolean striped) {
+        this.striped = striped;
+    }
+
+    public boolean isStriped() {
+        return this.striped;
+    }
+
+    /**
+     * Aggregate a successful record in the shard of the calling thread.
+     *
+     * @since 2.3.0
+     */
+    public void logRequestStriped(String method, String name, long responseTime, long contentLength) {
+        getHandle(method, name).success(responseTime, contentLength);
+    }
+
+    /**
+     * Aggregate a failed record in the shard of the calling thread.
+     *
+     * @since 2.3.0
+     */
+    public void logFailureStriped(String method, String name, long responseTime, String error) {
+        getHandle(method, name).failure(responseTime, error);
+    }
+
+    /**
+     * Aggregate a failed record with a throwable in the shard of the calling thread,
+     * the error message is only built once per distinct error when reporting.
+     *
+     * @since 2.3.0
+     */
+    public void logFailureStriped(String method, String name, long responseTime, Throwable error) {
+        getHandle(method, name).failure(responseTime, error);
+    }
+
+    /**
+     * Resolve the handle of a request type and a name, the same handle is returned for the same pair.
+     * The name is normalized first, and when there are too many entries, new names are counted as
+     * {@link StatsEntry#OTHER_NAMES} of their request type.
+     *
+     * @param method request type
+     * @param name   request name
+     * @return the stats handle
+     * @since 2.3.0
+     */
+    public StatsHandle getHandle(String method, String name) {
+        name = normalizeName(name);
+        ConcurrentMap<String, StatsHandle> handlesOfMethod = this.handles.get(method);
+        if (null == handlesOfMethod) {
+            handlesOfMethod = new ConcurrentHashMap<>(8);
+            ConcurrentMap<String, StatsHandle> previous = this.handles.putIfAbsent(method, handlesOfMethod);
+            if (null != previous) {
+                handlesOfMethod = previous;
+            }
+        }
+        StatsHandle handle = handlesOfMethod.get(name);
+        if (null == handle) {
+            synchronized (this.handles) {
+                handle = handlesOfMethod.get(name);
+                if (null == handle) {
+                    if (liveHandles >= maxEntries) {
+                        name = StatsEntry.OTHER_NAMES;
+                        handle = handlesOfMethod.get(name);
+                    }
+                    if (null == handle) {
+                        Integer id = freeHandleIds.poll();
+                        handle = new StatsHandle(this, null == id ? handleNumber++ : id, method, name);
+                        handlesOfMethod.put(name, handle);
+                        liveHandles++;
+                    }
+                }
+            }
+        }
+        return handle;
+    }
+
+    private String normalizeName(String name) {
+        NameNormalizer normalizer = this.nameNormalizer;
+        if (normalizer == NameNormalizer.IDENTITY) {
+            return name;
+        }
+        String normalized = nameCache.get(name);
+        if (null == normalized) {
+            normalized = normalizer.normalize(name);
+            if (nameCache.size() >= NAME_CACHE_SIZE) {
+                nameCache.clear();
+            }
+            nameCache.put(name, normalized);
+        }
+        return normalized;
+    }
+
+    /**
+     * Rewrite request names before they are resolved to entries, like {@link NameNormalizer#URL_TEMPLATE}.
+     * It applies to the names resolved after this call, so call it before any request is recorded.
+     *
+     * @param nameNormalizer the normalizer, defaults to {@link NameNormalizer#IDENTITY}
+     * @since 2.3.0
+     */
+    public void setNameNormalizer(NameNormalizer nameNormalizer) {
+        this.nameNormalizer = null == nameNormalizer ? NameNormalizer.IDENTITY : nameNormalizer;
+        nameCache.clear();
+    }
+
+    /**
+     * Limit the number of entries, new names beyond the limit are counted as {@link StatsEntry#OTHER_NAMES} of their
+     * request type. Defaults to 10000, or the LOCUST_STATS_MAX_ENTRIES environment variable.
+     *
+     * @param maxEntries max number of entries
+     * @since 2.3.0
+     */
+    public void setMaxEntries(int maxEntries) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("maxEntries must not be negative");
+        }
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Evict the entries without any request for some reports in a row, they are created again when requests come.
+     * Defaults to 0, which never evicts, or the LOCUST_STATS_EVICT_IDLE_REPORTS environment variable.
+     *
+     * @param reports number of idle reports before an entry is evicted, 0 to disable eviction
+     * @since 2.3.0
+     */
+    public void setEvictIdleReports(int reports) {
+        if (reports < 0) {
+            throw new IllegalArgumentException("reports must not be negative");
+        }
+        this.evictIdleReports = reports;
+    }
+
+    /**
+     * Count the idle reports of every handle id, ids idle for too long are evicted by the stats thread at the next
+     * swap.
+     */
+    private void trackIdleEntries(StatsBuffer retired) {
+        reportNumber++;
+        StatsEntry[] entries = retired.entries;
+        if (lastActiveReports.length < entries.length) {
+            lastActiveReports = Arrays.copyOf(lastActiveReports, entries.length);
+        }
+        for (int id = 0; id < entries.length; id++) {
+            StatsEntry entry = entries[id];
+            if (null != entry && (entry.getNumRequests() != 0 || entry.getNumFailures() != 0)) {
+                lastActiveReports[id] = reportNumber;
+            }
+        }
+        int reports = this.evictIdleReports;
+        if (reports <= 0) {
+            return;
+        }
+        for (int id = 0; id < lastActiveReports.length; id++) {
+            if (lastActiveReports[id] != 0 && reportNumber - lastActiveReports[id] >= reports) {
+                lastActiveReports[id] = 0;
+                idleHandleIds.offer(id);
+            }
+        }
+    }
+
+    private void evictIdleEntries(StatsBuffer current, StatsBuffer spare) {
+        Integer id;
+        while ((id = idleHandleIds.poll()) != null) {
+            StatsEntry entry = id < current.entries.length ? current.entries[id] : null;
+            if (null != entry && (entry.getNumRequests() != 0 || entry.getNumFailures() != 0)) {
+                // requests came again
+                continue;
+            }
+            if (null == entry && id < spare.entries.length) {
+                entry = spare.entries[id];
+            }
+            if (null == entry) {
+                continue;
+            }
+            synchronized (this.handles) {
+                ConcurrentMap<String, StatsHandle> handlesOfMethod = this.handles.get(entry.getMethod());
+                StatsHandle handle = null == handlesOfMethod ? null : handlesOfMethod.get(entry.getName());
+                if (null == handle || handle.id != id) {
+                    continue;
+                }
+                handlesOfMethod.remove(entry.getName());
+                handle.evicted = true;
+                liveHandles--;
+                evictedHandleIds.add(id);
+            }
+            current.evict(id);
+            spare.evict(id);
+        }
+    }
+
+    private void releaseEvictedHandleIds() {
+        if (evictedHandleIds.isEmpty()) {
+            return;
+        }
+        synchronized (this.handles) {
+            freeHandleIds.addAll(evictedHandleIds);
+        }
+        evictedHandleIds.clear();
+    }
+
+    /**
+     * Keep a {@link LatencyHistogram} of the whole run in every entry, it only applies to the entries created after
+     * this call, so call it before any request is recorded.
+     *
+     * @param significantDigits precision of the histograms from 1 to 5, or 0 to disable them
+     * @since 2.3.0
+     */
+    public void setLatencyHistogramDigits(int significantDigits) {
+        if (significantDigits != 0) {
+            // fail fast on an invalid precision
+            new LatencyHistogram(significantDigits);
+        }
+        this.latencyHistogramDigits = significantDigits;
+        if (significantDigits != 0) {
+            synchronized (latencyLock) {
+                if (null == totalLatencyHistogram) {
+                    totalLatencyHistogram = new LatencyHistogram(significantDigits);
+                }
+            }
+        }
+    }
+
+    public int getLatencyHistogramDigits() {
+        return this.latencyHistogramDigits;
+    }
+
+    /**
+     * Get a copy of the latency histogram of a request type and a name, it can be called from any thread.
+     * Records of the striped mode are counted after they are merged when it's time to report.
+     *
+     * Requests timed by locust4j are always kept in micros, see {@link StatsEntry#TIMER_HISTOGRAM_DIGITS}.
+     *
+     * @param method request type
+     * @param name   request name
+     * @return a copy of the histogram, or null if it's not enabled and nothing is timed
+     * @since 2.3.0
+     */
+    public LatencyHistogram getLatencyHistogram(String method, String name) {
+        name = normalizeName(name);
+        synchronized (latencyLock) {
+            Map<String, LatencyHistogram> histogramsOfMethod = latencyHistograms.get(method);
+            LatencyHistogram histogram = null == histogramsOfMethod ? null : histogramsOfMethod.get(name);
+            return null == histogram ? null : histogram.copy();
+        }
+    }
+
+    /**
+     * @return a copy of the latency histogram of all the requests, or null if it's not enabled and nothing is timed
+     * @since 2.3.0
+     */
+    public LatencyHistogram getTotalLatencyHistogram() {
+        synchronized (latencyLock) {
+            return null == totalLatencyHistogram ? null : totalLatencyHistogram.copy();
+        }
+    }
+
+    /**
+     * Summarize the latency histograms, which is logged when locust4j stops.
+     *
+     * @return a table of latency percentiles in millis, or an empty string if there's no histogram
+     * @since 2.3.0
+     */
+    public String getLatencyReport() {
+        synchronized (latencyLock) {
+            if (null == totalLatencyHistogram) {
+                return "";
+            }
+            StringBuilder report = new StringBuilder(512);
+            report.append(String.format("%-8s %-32s %10s %10s %10s %10s %10s %10s %10s %10s%n",
+                "Type", "Name", "# reqs", "min", "p50", "p90", "p99", "p99.9", "p99.99", "max"));
+            for (Map.Entry<String, Map<String, LatencyHistogram>> histogramsOfMethod : latencyHistograms.entrySet()) {
+                for (Map.Entry<String, LatencyHistogram> histogram : histogramsOfMethod.getValue().entrySet()) {
+                    appendLatencies(report, histogramsOfMethod.getKey(), histogram.getKey(), histogram.getValue());
+                }
+            }
+            appendLatencies(report, "", "Aggregated", totalLatencyHistogram);
+            return report.toString();
+        }
+    }
+
+    private void mergeLatencyHistograms(StatsBuffer retired) {
+        synchronized (latencyLock) {
+            for (StatsEntry entry : retired.entries) {
+                if (null == entry || null == entry.getLatencyHistogram()) {
+                    continue;
+                }
+                LatencyHistogram histogram = entry.getLatencyHistogram();
+                if (histogram.getTotalCount() == 0) {
+                    continue;
+                }
+                Map<String, LatencyHistogram> histogramsOfMethod = latencyHistograms.get(entry.getMethod());
+                if (null == histogramsOfMethod) {
+                    histogramsOfMethod = new LinkedHashMap<>();
+                    latencyHistograms.put(entry.getMethod(), histogramsOfMethod);
+                }
+                LatencyHistogram runHistogram = histogramsOfMethod.get(entry.getName());
+                if (null == runHistogram) {
+                    runHistogram = new LatencyHistogram(histogram.getSignificantDigits());
+                    histogramsOfMethod.put(entry.getName(), runHistogram);
+                }
+                runHistogram.merge(histogram);
+                histogram.reset();
+            }
+            LatencyHistogram histogram = retired.total.getLatencyHistogram();
+            if (null != histogram && histogram.getTotalCount() > 0) {
+                if (null == totalLatencyHistogram) {
+                    totalLatencyHistogram = new LatencyHistogram(histogram.getSignificantDigits());
+                }
+                totalLatencyHistogram.merge(histogram);
+                histogram.reset();
+            }
+        }
+    }
+
+    private static void appendLatencies(StringBuilder report, String method, String name,
+                                        LatencyHistogram histogram) {
+        if (histogram.getTotalCount() == 0) {
+            return;
+        }
+        report.append(String.format("%-8s %-32s %10d %10.3f %10.3f %10.3f %10.3f %10.3f %10.3f %10.3f%n",
+            method, name, histogram.getTotalCount(),
+            histogram.getMinValue() / 1000.0,
+            histogram.getValueAtPercentile(50) / 1000.0,
+            histogram.getValueAtPercentile(90) / 1000.0,
+            histogram.getValueAtPercentile(99) / 1000.0,
+            histogram.getValueAtPercentile(99.9) / 1000.0,
+            histogram.getValueAtPercentile(99.99) / 1000.0,
+            histogram.getMaxValue() / 1000.0));
+    }
+
+    /**
+     * Rewrite error messages before they are counted, like {@link ErrorNormalizer#MASK_IDS}, so messages with request
+     * IDs or timestamps don't end up as one error per failure.
+     *
+     * @param errorNormalizer the normalizer, defaults to {@link ErrorNormalizer#IDENTITY}
+     * @since 2.3.0
+     */
+    public void setErrorNormalizer(ErrorNormalizer errorNormalizer) {
+        this.errorNormalizer = null == errorNormalizer ? ErrorNormalizer.IDENTITY : errorNormalizer;
+    }
+
+    public ErrorNormalizer getErrorNormalizer() {
+        return this.errorNormalizer;
+    }
+
+    /**
+     * Limit the number of distinct errors in a report, the others are counted as {@link StatsError#OTHER_ERRORS} of
+     * their request type and name. Defaults to 1000, or the LOCUST_STATS_MAX_ERRORS environment variable.
+     *
+     * @param maxErrors max number of distinct errors per report
+     * @since 2.3.0
+     */
+    public void setMaxErrors(int maxErrors) {
+        if (maxErrors < 0) {
+            throw new IllegalArgumentException("maxErrors must not be negative");
+        }
+        this.maxErrors = maxErrors;
+    }
+
+    public int getMaxErrors() {
+        return this.maxErrors;
+    }
+
+    /**
+     * Report failures recorded with a throwable like {@link Throwable#toString()}, which starts with the class name,
+     * instead of {@link Throwable#getMessage()}, which is what locust4j has always reported for the exceptions thrown
+     * by tasks. Call it before any failure is recorded. Defaults to false, or the
+     * LOCUST_STATS_ERRORS_WITH_CLASS_NAME environment variable.
+     *
+     * @param errorsWithClassName report the class name of throwables or not
+     * @since 2.3.0
+     */
+    public void setErrorsWithClassName(boolean errorsWithClassName) {
+        this.errorsWithClassName = errorsWithClassName;
+    }
+
+    public boolean isErrorsWithClassName() {
+        return this.errorsWithClassName;
+    }
+
+    String describeThrowable(Throwable error) {
+        return this.errorsWithClassName ? error.toString() : error.getMessage();
+    }
+
+    /**
+     * A null error, like the message of an exception without one, is counted as "null".
+     */
+    String normalizeError(String error) {
+        return this.errorNormalizer.normalize(null == error ? "null" : error);
+    }
+
+    /**
+     * In the sampling mode, only one of every N successful records of a request type and name is aggregated, and
+     * it's counted N times, so recording costs much less. The records skipped since the last sampled one are counted
+     * when it's time to report, so the number of requests of every entry stays exact in every report, even for entries
+     * with fewer requests than N, only the response times are sampled. Failures are never sampled.
+     * Sampled records are aggregated by the recording threads like the striped mode.
+     * Defaults to 1, which records everything, or the LOCUST_STATS_SAMPLE_RATE environment variable.
+     *
+     * @param sampleRate record 1 in sampleRate successful records
+     * @since 2.3.0
+     */
+    public void setSampleRate(int sampleRate) {
+        if (sampleRate < 1) {
+            throw new IllegalArgumentException("sampleRate must be positive");
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    public int getSampleRate() {
+        return this.sampleRate;
+    }
+
+    /**
+     * Adapt the sample rate to a budget of records per second after every report, the sample rate becomes the
+     * reported requests per second divided by the budget. Defaults to 0, which keeps the sample rate as it is,
+     * or the LOCUST_STATS_SAMPLE_BUDGET environment variable.
+     *
+     * @param recordsPerSecond max number of records aggregated per second, or 0 to disable it
+     * @since 2.3.0
+     */
+    public void setSampleBudget(long recordsPerSecond) {
+        if (recordsPerSecond < 0) {
+            throw new IllegalArgumentException("recordsPerSecond must not be negative");
+        }
+        this.sampleBudget = recordsPerSecond;
+    }
+
+    private void adaptSampleRate(StatsEntry total, long elapsed) {
+        long budget = this.sampleBudget;
+        if (budget <= 0 || elapsed <= 0) {
+            return;
+        }
+        long rps = total.getNumRequests() * 1000 / elapsed;
+        this.sampleRate = (int) Math.max(1, Math.min(Integer.MAX_VALUE, (rps + budget - 1) / budget));
+    }
+
+    /**
+     * Append the stats of every report to a memory-mapped file, which can be converted to a locust-style
+     * stats_history.csv by {@link StatsHistoryReader}. It must be set before the stats are started.
+     * Defaults to none, or the LOCUST_STATS_HISTORY_FILE environment variable.
+     *
+     * @param historyFile path of the history file, an existing one is appended to, or null to disable it
+     * @since 2.3.0
+     */
+    public void setHistoryFile(String historyFile) {
+        this.historyFile = historyFile;
+    }
+
+    /**
+     * Set the current number of users, it's only written to the stats history.
+     *
+     * @param userCount number of users
+     * @since 2.3.0
+     */
+    public void setUserCount(int userCount) {
+        this.userCount = userCount;
+    }
+
+    /**
+     * Set how often the stats are reported to the master, a longer interval costs less CPU of the master.
+     * The requests per second are keyed by epoch seconds, so they are correct with any interval.
+     * Defaults to 3000, or the LOCUST_STATS_REPORT_INTERVAL environment variable.
+     *
+     * @param millis report interval in millis
+     * @since 2.3.0
+     */
+    public void setReportInterval(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("report interval must be positive");
+        }
+        this.reportInterval = millis;
+    }
+
+    public long getReportInterval() {
+        return this.reportInterval;
+    }
+
+    /**
+     * In the adaptive mode, the report interval is lengthened when there are many entries and errors to report,
+     * up to 10 seconds, so that the master keeps the current RPS up to date, and shortened to 1 second during
+     * spawning. Defaults to the LOCUST_STATS_ADAPTIVE_REPORT_INTERVAL environment variable, or disabled.
+     *
+     * @param adaptive enable the adaptive mode or not
+     * @since 2.3.0
+     */
+    public void setAdaptiveReportInterval(boolean adaptive) {
+        this.adaptiveReportInterval = adaptive;
+    }
+
+    public boolean isAdaptiveReportInterval() {
+        return this.adaptiveReportInterval;
+    }
+
+    /**
+     * Tell the adaptive mode that users are being spawned, called by the runner when the master asks to spawn.
+     * It's cleared by the next report, so the master gets the stats of the new users within 1 second.
+     *
+     * @param spawning users are being spawned or not
+     * @since 2.3.0
+     */
+    public void setSpawning(boolean spawning) {
+        this.spawning = spawning;
+    }
+
+    /**
+     * @return how long to wait before the next report, in millis
+     */
+    protected long nextReportInterval() {
+        long base = this.reportInterval;
+        if (!this.adaptiveReportInterval) {
+            return base;
+        }
+        if (this.spawning) {
+            return Math.min(base, SPAWNING_REPORT_INTERVAL);
+        }
+        long steps = 1 + this.lastReportSize / ADAPTIVE_REPORT_SIZE_STEP;
+        return Math.max(base, Math.min(base * steps, MAX_ADAPTIVE_REPORT_INTERVAL));
+    }
+
+    StatsShard localShard() {
+        return this.localShard.get();
+    }
+
+    /**
+     * Wake up the stats thread if it's parked, producers don't need to hold any monitor.
+     */
     public void wakeMeUp() {
-        synchronized (lock) {
-            lock.notifyAll();
+        if (idle) {
+            idle = false;
+            LockSupport.unpark(consumer);
         }
     }
 
+    private boolean allQueuesEmpty() {
+        SampleRingBuffer buffer = this.sampleBuffer;
+        return (null == buffer || buffer.isEmpty()) && reportSuccessQueue.isEmpty() && reportFailureQueue.isEmpty()
+            && clearStatsQueue.isEmpty() && timeToReportQueue.isEmpty();
+    }
+
     private void sleep() {
-        synchronized (lock) {
-            try {
-                lock.wait();
-            } catch (Exception ex) {
-                logger.error(ex.getMessage());
-            }
+        idle = true;
+        // Producers offer before checking the idle flag, check the queues again after publishing it,
+        // so that a record offered in between won't wait for the timeout.
+        if (allQueuesEmpty()) {
+            LockSupport.parkNanos(this, MAX_PARK_NANOS);
         }
+        idle = false;
     }
 
     /**
@@ -122,11 +927,17 @@ public class Stats implements Runnable {
     public void run() {
         String name = Thread.currentThread().getName();
         Thread.currentThread().setName(name + "stats");
+        consumer = Thread.currentThread();
 
-        while (true) {
+        while (!Thread.currentThread().isInterrupted()) {
 
             boolean allEmpty = true;
 
+            SampleRingBuffer buffer = this.sampleBuffer;
+            if (null != buffer && buffer.drain(sampleHandler, DRAIN_BATCH_SIZE) > 0) {
+                allEmpty = false;
+            }
+
             RequestSuccess successMessage = reportSuccessQueue.poll();
             if (successMessage != null) {
                 this.logRequest(successMessage.getRequestType(), successMessage.getName(),
@@ -150,8 +961,10 @@ public class Stats implements Runnable {
 
             Boolean timeToReport = timeToReportQueue.poll();
             if (null != timeToReport) {
-                Map<String, Object> data = this.collectReportData();
-                messageToRunnerQueue.add(data);
+                StatsBuffer retired = this.swapBuffers();
+                if (null != retired) {
+                    retiredBuffers.offer(retired);
+                }
                 allEmpty = false;
             }
 
@@ -162,53 +975,100 @@ public class Stats implements Runnable {
         }
     }
 
+    /**
+     * @return the total of the current interval, merged from the entries
+     */
     protected StatsEntry getTotal() {
-        return this.total;
+        StatsEntry total = this.newEntry("Total", "");
+        for (StatsEntry entry : this.active.entries) {
+            if (null != entry) {
+                total.merge(entry);
+            }
+        }
+        return total;
     }
 
     protected StatsEntry get(String name, String method) {
-        StatsEntry entry = this.entries.get(name + method);
-        if (null == entry) {
-            entry = new StatsEntry(name, method);
-            entry.reset();
-            this.entries.put(name + method, entry);
+        return this.active.get(this.getHandle(method, name));
+    }
+
+    StatsEntry newEntry(String name, String method) {
+        StatsEntry entry = new StatsEntry(name, method);
+        entry.reset();
+        if (this.latencyHistogramDigits > 0) {
+            entry.enableLatencyHistogram(this.latencyHistogramDigits);
         }
         return entry;
     }
 
     public void logRequest(String method, String name, long responseTime, long contentLength) {
-        this.total.log(responseTime, contentLength);
-        this.get(name, method).log(responseTime, contentLength);
+        this.logRequest(this.getHandle(method, name), responseTime, contentLength);
+    }
+
+    private void logRequest(StatsHandle handle, long responseTime, long contentLength) {
+        this.active.get(handle).log(responseTime, contentLength);
     }
 
     public void logError(String method, String name, String error) {
-        this.total.logError(error);
-        this.get(name, method).logError(error);
+        this.logError(this.getHandle(method, name), error);
+    }
 
-        String key = Utils.md5(method, name, error);
-        if (null == key) {
-            key = method + name + error;
-        }
-        StatsError entry = this.errors.get(key);
-        if (null == entry) {
-            entry = new StatsError(name, method, error);
-            this.errors.put(key, entry);
+    private void logError(StatsHandle handle, String error) {
+        this.active.get(handle).logError(error);
+        this.active.error(handle, this.normalizeError(error)).occured();
+    }
+
+    /**
+     * Merge an entry drained from a shard.
+     */
+    void merge(StatsHandle handle, StatsEntry shardEntry) {
+        this.active.get(handle).merge(shardEntry);
+    }
+
+    /**
+     * Merge an error drained from a shard, the message is normalized already.
+     */
+    void merge(StatsHandle handle, StatsError shardError) {
+        this.active.error(handle, shardError.error).merge(shardError);
+    }
+
+    /**
+     * Merge the occurrences of an error drained from a shard, the message is normalized already.
+     */
+    void merge(StatsHandle handle, String error, long occurrences) {
+        this.active.error(handle, error).occurrences += occurrences;
+    }
+
+    protected void mergeShards() {
+        for (StatsShard shard : shards) {
+            boolean drained = shard.drainTo(this);
+            if (!drained && !shard.isOwnerAlive()) {
+                shards.remove(shard);
+            }
         }
-        entry.occured();
     }
 
     public void clearAll() {
-        this.total = new StatsEntry("Total");
-        this.total.reset();
-        this.entries = new HashMap<>(8);
-        this.errors = new HashMap<>(8);
+        for (StatsShard shard : shards) {
+            shard.clear();
+        }
+        this.active.clear();
+        synchronized (latencyLock) {
+            this.latencyHistograms.clear();
+            if (null != this.totalLatencyHistogram) {
+                this.totalLatencyHistogram.reset();
+            }
+        }
     }
 
     protected List<Map<String, Object>> serializeStats() {
-        List<Map<String, Object>> entries = new ArrayList<>(this.entries.size());
-        for (Map.Entry<String, StatsEntry> item : this.entries.entrySet()) {
-            StatsEntry entry = item.getValue();
-            if (!(entry.getNumRequests() == 0 && entry.getNumFailures() == 0)) {
+        return serializeStats(this.active);
+    }
+
+    private static List<Map<String, Object>> serializeStats(StatsBuffer buffer) {
+        List<Map<String, Object>> entries = new ArrayList<>(buffer.entries.length);
+        for (StatsEntry entry : buffer.entries) {
+            if (null != entry && !(entry.getNumRequests() == 0 && entry.getNumFailures() == 0)) {
                 entries.add(entry.getStrippedReport());
             }
         }
@@ -216,33 +1076,192 @@ public class Stats implements Runnable {
     }
 
     public Map<String, Map<String, Object>> serializeErrors() {
-        Map<String, Map<String, Object>> errors = new HashMap<>(8);
-        for (Map.Entry<String, StatsError> item : this.errors.entrySet()) {
-            String key = item.getKey();
-            StatsError error = item.getValue();
-            errors.put(key, error.toMap());
+        return serializeErrors(this.active);
+    }
+
+    private static Map<String, Map<String, Object>> serializeErrors(StatsBuffer buffer) {
+        Map<String, Map<String, Object>> errors = new HashMap<>(buffer.numErrors * 2);
+        for (Map<String, StatsError> errorsOfHandle : buffer.errors) {
+            if (null == errorsOfHandle) {
+                continue;
+            }
+            for (StatsError error : errorsOfHandle.values()) {
+                errors.put(error.getKey(), error.toMap());
+            }
         }
         return errors;
     }
 
-    protected Map<String, Object> collectReportData() {
-        Map<String, Object> data = new HashMap<>(3);
+    /**
+     * Merge the shards, then swap the active buffer with the spare one, called by the stats thread.
+     *
+     * @return the retired buffer, or null if it's interrupted while waiting for the spare buffer
+     */
+    private StatsBuffer swapBuffers() {
+        this.mergeShards();
+        this.releaseEvictedHandleIds();
 
-        data.put("stats", this.serializeStats());
-        data.put("stats_total", this.total.getStrippedReport());
-        data.put("errors", this.serializeErrors());
+        StatsBuffer spare;
+        try {
+            spare = spareBuffers.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        this.evictIdleEntries(this.active, spare);
+
+        StatsBuffer retired = this.active;
+        this.active = spare;
+        return retired;
+    }
+
+    /**
+     * Serialize a retired buffer, then reset it in place and recycle it as the spare buffer.
+     */
+    private Map<String, Object> report(StatsBuffer retired) {
+        return report(retired, false);
+    }
+
+    /**
+     * @param packed pack the entries and errors straight into msgpack instead of building maps, which is how they
+     *               are sent to the master
+     */
+    private Map<String, Object> report(StatsBuffer retired, boolean packed) {
+        Map<String, Object> data = new HashMap<>(8);
+
+        long now = Utils.now();
+        long elapsed = now - this.lastReportMillis;
+        this.lastReportMillis = now;
 
-        errors.clear();
+        // the buffer always goes back to the spares, or the stats thread waits for it forever
+        boolean reported = false;
+        try {
+            retired.mergeTotal();
+            this.adaptSampleRate(retired.total, elapsed);
+            this.trackIdleEntries(retired);
+            this.mergeLatencyHistograms(retired);
+
+            StatsHistoryWriter history = this.historyWriter;
+            if (null != history) {
+                history.offer(now, elapsed, this.userCount, retired.entries, retired.total);
+            }
+
+            if (packed) {
+                this.lastReportSize = packReport(retired, data);
+            } else {
+                List<Map<String, Object>> stats = serializeStats(retired);
+                Map<String, Map<String, Object>> errors = serializeErrors(retired);
+                this.lastReportSize = stats.size() + errors.size();
+                data.put("stats", stats);
+                data.put("stats_total", retired.total.getStrippedReport());
+                data.put("errors", errors);
+            }
+            reported = true;
+        } catch (IOException ex) {
+            logger.error("Failed to pack the stats", ex);
+        } finally {
+            if (!reported) {
+                // a partly reported buffer isn't recycled with stale counts
+                retired.resetEntries();
+            }
+            this.spawning = false;
+            retired.clearErrors();
+            spareBuffers.offer(retired);
+        }
+
+        long overflowed = overflowedSamples.getAndSet(0);
+        long dropped = droppedSamples.getAndSet(0);
+        data.put("overflowed_samples", overflowed);
+        data.put("dropped_samples", dropped);
+        if (dropped > 0) {
+            logger.warn("{} records are dropped because the sample buffer is full, the reported stats are lossy", dropped);
+        }
 
         return data;
     }
 
+    /**
+     * Pack the entries, the total and the errors into the same maps as {@link #serializeStats()} and
+     * {@link #serializeErrors()}, and reset the entries in place, so reporting allocates nothing but the packed bytes.
+     * The order of keys in the packed maps is not part of the contract.
+     *
+     * @return number of entries and errors
+     */
+    private int packReport(StatsBuffer retired, Map<String, Object> data) throws IOException {
+        MessageEncoder encoder = this.reportEncoder;
+        if (null == encoder) {
+            encoder = new MessageEncoder();
+            this.reportEncoder = encoder;
+        }
+
+        int numStats = 0;
+        for (StatsEntry entry : retired.entries) {
+            if (null != entry && !(entry.getNumRequests() == 0 && entry.getNumFailures() == 0)) {
+                numStats++;
+            }
+        }
+        MessagePacker packer = encoder.begin();
+        packer.packArrayHeader(numStats);
+        for (StatsEntry entry : retired.entries) {
+            if (null != entry && !(entry.getNumRequests() == 0 && entry.getNumFailures() == 0)) {
+                entry.packTo(packer);
+                entry.reset();
+            }
+        }
+        data.put("stats", new PackedValue(encoder.toByteArray()));
+
+        packer = encoder.begin();
+        retired.total.packTo(packer);
+        retired.total.reset();
+        data.put("stats_total", new PackedValue(encoder.toByteArray()));
+
+        // errors are few, they are keyed like serializeErrors() does
+        Map<String, StatsError> errors = new HashMap<>(retired.numErrors * 2);
+        for (Map<String, StatsError> errorsOfHandle : retired.errors) {
+            if (null == errorsOfHandle) {
+                continue;
+            }
+            for (StatsError error : errorsOfHandle.values()) {
+                errors.put(error.getKey(), error);
+            }
+        }
+        packer = encoder.begin();
+        packer.packMapHeader(errors.size());
+        for (Map.Entry<String, StatsError> error : errors.entrySet()) {
+            packer.packString(error.getKey());
+            error.getValue().packTo(packer);
+        }
+        data.put("errors", new PackedValue(encoder.toByteArray()));
+        return numStats + errors.size();
+    }
+
+    /**
+     * Swap the buffers and report in the calling thread.
+     */
+    protected Map<String, Object> collectReportData() {
+        StatsBuffer retired = this.swapBuffers();
+        if (null == retired) {
+            return null;
+        }
+        return this.report(retired);
+    }
+
+    /**
+     * Swap the buffers and report in the calling thread, with the stats packed like they are sent to the master.
+     */
+    Map<String, Object> collectPackedReportData() {
+        StatsBuffer retired = this.swapBuffers();
+        if (null == retired) {
+            return null;
+        }
+        return this.report(retired, true);
+    }
+
     private static class StatsInstanceHolder {
         private static final Stats INSTANCE = new Stats();
     }
 
     private static class StatsTimer implements Runnable {
-        private static final int SLAVE_REPORT_INTERVAL = 3000;
         protected Stats stats;
 
         private StatsTimer(Stats stats) {
@@ -256,7 +1275,13 @@ public class Stats implements Runnable {
 
             while (true) {
                 try {
-                    Thread.sleep(SLAVE_REPORT_INTERVAL);
+                    // sleep in short steps, so a new interval or spawning takes effect soon
+                    Clock clock = Utils.getClock();
+                    long start = clock.currentTimeMillis();
+                    long remaining;
+                    while ((remaining = start + stats.nextReportInterval() - clock.currentTimeMillis()) > 0) {
+                        clock.sleep(Math.min(remaining, SPAWNING_REPORT_INTERVAL));
+                    }
                 } catch (InterruptedException ex) {
                     return;
                 } catch (Exception ex) {
@@ -268,4 +1293,36 @@ public class Stats implements Runnable {
         }
     }
 
+    private static class StatsReporter implements Runnable {
+        protected Stats stats;
+
+        private StatsReporter(Stats stats) {
+            this.stats = stats;
+        }
+
+        @Override
+        public void run() {
+            String name = Thread.currentThread().getName();
+            Thread.currentThread().setName(name + "stats-reporter");
+
+            while (true) {
+                StatsBuffer retired;
+                try {
+                    retired = stats.retiredBuffers.take();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                try {
+                    Map<String, Object> data = stats.report(retired, true);
+                    if (!stats.messageToRunnerQueue.offer(data)) {
+                        logger.error("Failed to insert stats message to the queue, the runner may be stuck in sending");
+                    }
+                } catch (Exception ex) {
+                    // the buffer has been recycled by report(), keep reporting the next ones
+                    logger.error("Failed to report the stats", ex);
+                }
+            }
+        }
+    }
+
 }
\ No newline at end of file
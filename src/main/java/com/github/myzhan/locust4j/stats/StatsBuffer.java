@@ -0,0 +1,130 @@
+package com.github.myzhan.locust4j.stats;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link StatsBuffer} holds the entries and errors of a report interval, indexed by {@link StatsHandle}.
+ *
+ * Stats keeps two of them, the active one is only touched by the stats thread, and the retired one is only touched
+ * by the reporter thread, they are handed over through blocking queues when it's time to report.
+ *
+ * @author myzhan
+ * @since 2.3.0
+ */
+final class StatsBuffer {
+
+    private final Stats stats;
+    StatsEntry[] entries;
+    /**
+     * Errors of every handle, keyed by the normalized error message, indexed like the entries.
+     */
+    Map<String, StatsError>[] errors;
+    int numErrors;
+    /**
+     * Merged from the entries when it's time to report, instead of logging every record twice.
+     */
+    StatsEntry total;
+
+    StatsBuffer(Stats stats) {
+        this.stats = stats;
+        this.entries = new StatsEntry[16];
+        this.errors = newErrors(16);
+        this.total = stats.newEntry("Total", "");
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Map<String, StatsError>[] newErrors(int length) {
+        return new Map[length];
+    }
+
+    StatsEntry get(StatsHandle handle) {
+        handle = handle.current();
+        if (handle.id >= this.entries.length) {
+            this.entries = Arrays.copyOf(this.entries, Math.max(handle.id + 1, this.entries.length * 2));
+        }
+        StatsEntry entry = this.entries[handle.id];
+        if (null == entry) {
+            entry = stats.newEntry(handle.getName(), handle.getMethod());
+            this.entries[handle.id] = entry;
+        }
+        return entry;
+    }
+
+    /**
+     * Get the error of a normalized message, errors beyond the limit are counted as {@link StatsError#OTHER_ERRORS}.
+     */
+    StatsError error(StatsHandle handle, String error) {
+        handle = handle.current();
+        if (handle.id >= this.errors.length) {
+            this.errors = Arrays.copyOf(this.errors, Math.max(handle.id + 1, this.errors.length * 2));
+        }
+        Map<String, StatsError> errorsOfHandle = this.errors[handle.id];
+        if (null == errorsOfHandle) {
+            errorsOfHandle = new HashMap<>(4);
+            this.errors[handle.id] = errorsOfHandle;
+        }
+        StatsError entry = errorsOfHandle.get(error);
+        if (null == entry) {
+            if (this.numErrors >= stats.getMaxErrors()) {
+                error = StatsError.OTHER_ERRORS;
+                entry = errorsOfHandle.get(error);
+            }
+            if (null == entry) {
+                entry = new StatsError(handle.getName(), handle.getMethod(), error);
+                errorsOfHandle.put(error, entry);
+                this.numErrors++;
+            }
+        }
+        return entry;
+    }
+
+    void mergeTotal() {
+        for (StatsEntry entry : this.entries) {
+            if (null != entry && (entry.getNumRequests() != 0 || entry.getNumFailures() != 0)) {
+                this.total.merge(entry);
+            }
+        }
+    }
+
+    /**
+     * Drop the entry and errors of an evicted handle.
+     */
+    void evict(int id) {
+        if (id < this.entries.length) {
+            this.entries[id] = null;
+        }
+        if (id < this.errors.length) {
+            this.errors[id] = null;
+        }
+    }
+
+    /**
+     * Reset the entries and the total in place, like reporting does, for a buffer that failed to be reported.
+     */
+    void resetEntries() {
+        for (StatsEntry entry : this.entries) {
+            if (null != entry) {
+                entry.reset();
+            }
+        }
+        this.total.reset();
+    }
+
+    void clearErrors() {
+        for (Map<String, StatsError> errorsOfHandle : this.errors) {
+            if (null != errorsOfHandle) {
+                errorsOfHandle.clear();
+            }
+        }
+        this.numErrors = 0;
+    }
+
+    void clear() {
+        this.total = stats.newEntry("Total", "");
+        this.entries = new StatsEntry[this.entries.length];
+        this.errors = newErrors(this.errors.length);
+        this.numErrors = 0;
+    }
+}
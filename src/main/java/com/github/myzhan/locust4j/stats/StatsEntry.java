@@ -1,15 +1,52 @@
 package com.github.myzhan.locust4j.stats;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
 import com.github.myzhan.locust4j.message.LongIntMap;
 import com.github.myzhan.locust4j.utils.Utils;
+import org.msgpack.core.MessagePacker;
 
 /**
  * @author myzhan
  */
 public class StatsEntry {
+
+    /**
+     * Request names beyond the limit of entries are counted as this one.
+     *
+     * @since 2.3.0
+     */
+    public static final String OTHER_NAMES = "other names";
+
+    /**
+     * Keys of the report encoded once, so packing a report doesn't encode the same strings for every entry.
+     */
+    private static final byte[] NAME = utf8("name");
+    private static final byte[] METHOD = utf8("method");
+    private static final byte[] LAST_REQUEST_TIMESTAMP = utf8("last_request_timestamp");
+    private static final byte[] START_TIME = utf8("start_time");
+    private static final byte[] NUM_REQUESTS = utf8("num_requests");
+    private static final byte[] NUM_NONE_REQUESTS = utf8("num_none_requests");
+    private static final byte[] NUM_FAILURES = utf8("num_failures");
+    private static final byte[] TOTAL_RESPONSE_TIME = utf8("total_response_time");
+    private static final byte[] MAX_RESPONSE_TIME = utf8("max_response_time");
+    private static final byte[] MIN_RESPONSE_TIME = utf8("min_response_time");
+    private static final byte[] TOTAL_CONTENT_LENGTH = utf8("total_content_length");
+    private static final byte[] RESPONSE_TIMES = utf8("response_times");
+    private static final byte[] NUM_REQS_PER_SEC = utf8("num_reqs_per_sec");
+    private static final byte[] NUM_FAIL_PER_SEC = utf8("num_fail_per_sec");
+
+    /**
+     * Precision of the latency histogram kept for requests timed in nanos when none is enabled, about 4KB per entry,
+     * latencies are kept within 1/16 of their value.
+     *
+     * @since 2.3.0
+     */
+    public static final int TIMER_HISTOGRAM_DIGITS = 1;
+
     private String name;
     private String method = "";
     private long numRequests;
@@ -17,12 +54,21 @@ public class StatsEntry {
     private long totalResponseTime;
     private long minResponseTime;
     private long maxResponseTime;
-    private LongIntMap numReqsPerSec;
-    private LongIntMap numFailPerSec;
-    private LongIntMap responseTimes;
+    private final PerSecondCounter numReqsPerSec = new PerSecondCounter();
+    private final PerSecondCounter numFailPerSec = new PerSecondCounter();
+    private final ResponseTimeHistogram responseTimes = new ResponseTimeHistogram();
     private long totalContentLength;
     private long startTime;
     private long lastRequestTimestamp;
+    /**
+     * Enabled by Stats, or created for requests timed in nanos, it's not reset with the other fields, but merged into the histograms of the whole run by Stats.
+     */
+    private LatencyHistogram latencyHistogram;
+    /**
+     * The name and the method encoded on demand for packing.
+     */
+    private byte[] nameBytes;
+    private byte[] methodBytes;
 
     public StatsEntry(String name) {
         this.name = name;
@@ -38,20 +84,68 @@ public class StatsEntry {
         this.numRequests = 0;
         this.numFailures = 0;
         this.totalResponseTime = 0;
-        this.responseTimes = new LongIntMap();
+        this.responseTimes.clear();
         this.minResponseTime = 0;
         this.maxResponseTime = 0;
         this.lastRequestTimestamp = Utils.currentTimeInSeconds();
-        this.numReqsPerSec = new LongIntMap();
-        this.numFailPerSec = new LongIntMap();
+        this.numReqsPerSec.clear();
+        this.numFailPerSec.clear();
         this.totalContentLength = 0;
     }
 
     public void log(long responseTime, long contentLength) {
-        this.numRequests++;
-        this.logTimeOfRequest();
-        this.logResponseTime(responseTime);
-        this.totalContentLength += contentLength;
+        this.log(responseTime, contentLength, responseTime * 1000, 1);
+    }
+
+    /**
+     * Log a sampled request, which stands for a number of requests with the same response time.
+     *
+     * @param responseTime  response time in millis
+     * @param contentLength content length in bytes
+     * @param weight        number of requests this one stands for
+     * @since 2.3.0
+     */
+    public void log(long responseTime, long contentLength, int weight) {
+        this.log(responseTime, contentLength, responseTime * 1000, weight);
+    }
+
+    private void log(long responseTime, long contentLength, long responseTimeMicros, int weight) {
+        this.numRequests += weight;
+        long now = Utils.currentTimeInSeconds();
+        this.numReqsPerSec.add(now, weight);
+        this.lastRequestTimestamp = now;
+        this.updateResponseTime(responseTime, weight);
+        this.totalContentLength += contentLength * weight;
+        if (this.latencyHistogram != null) {
+            this.latencyHistogram.recordValue(responseTimeMicros, weight);
+        }
+    }
+
+    /**
+     * Log a request timed in nanos, the response time is rounded to millis for locust, and recorded in micros by the
+     * latency histogram. If no histogram is enabled, one with {@link #TIMER_HISTOGRAM_DIGITS} is kept for it.
+     *
+     * @param responseTimeNanos response time in nanos
+     * @param contentLength     content length in bytes
+     * @since 2.3.0
+     */
+    public void logNanos(long responseTimeNanos, long contentLength) {
+        this.logNanos(responseTimeNanos, contentLength, 1);
+    }
+
+    /**
+     * Log a sampled request timed in nanos, which stands for a number of requests with the same response time.
+     *
+     * @param responseTimeNanos response time in nanos
+     * @param contentLength     content length in bytes
+     * @param weight            number of requests this one stands for
+     * @since 2.3.0
+     */
+    public void logNanos(long responseTimeNanos, long contentLength, int weight) {
+        if (this.latencyHistogram == null) {
+            this.latencyHistogram = new LatencyHistogram(TIMER_HISTOGRAM_DIGITS);
+        }
+        this.log((responseTimeNanos + 500000) / 1000000, contentLength, responseTimeNanos / 1000, weight);
     }
 
     public void logTimeOfRequest() {
@@ -61,7 +155,11 @@ public class StatsEntry {
     }
 
     public void logResponseTime(long responseTime) {
-        this.totalResponseTime += responseTime;
+        this.updateResponseTime(responseTime, 1);
+    }
+
+    private void updateResponseTime(long responseTime, int weight) {
+        this.totalResponseTime += responseTime * weight;
 
         if (this.minResponseTime == 0) {
             this.minResponseTime = responseTime;
@@ -75,19 +173,7 @@ public class StatsEntry {
             this.maxResponseTime = responseTime;
         }
 
-        long roundedResponseTime;
-
-        if (responseTime < 100) {
-            roundedResponseTime = responseTime;
-        } else if (responseTime < 1000) {
-            roundedResponseTime = Utils.round(responseTime, -1);
-        } else if (responseTime < 10000) {
-            roundedResponseTime = Utils.round(responseTime, -2);
-        } else {
-            roundedResponseTime = Utils.round(responseTime, -3);
-        }
-
-        this.responseTimes.add(roundedResponseTime);
+        this.responseTimes.add(responseTime, weight);
     }
 
     public void logError(String error) {
@@ -96,6 +182,67 @@ public class StatsEntry {
         this.numFailPerSec.add(now);
     }
 
+    /**
+     * Add up the results of another entry, used to merge the shards of the striped mode.
+     *
+     * @param other the entry to merge from
+     * @since 2.3.0
+     */
+    public void merge(StatsEntry other) {
+        this.numRequests += other.numRequests;
+        this.numFailures += other.numFailures;
+        this.totalResponseTime += other.totalResponseTime;
+        this.totalContentLength += other.totalContentLength;
+
+        if (this.minResponseTime == 0 || (other.minResponseTime != 0 && other.minResponseTime < this.minResponseTime)) {
+            this.minResponseTime = other.minResponseTime;
+        }
+        if (other.maxResponseTime > this.maxResponseTime) {
+            this.maxResponseTime = other.maxResponseTime;
+        }
+        if (other.lastRequestTimestamp > this.lastRequestTimestamp) {
+            this.lastRequestTimestamp = other.lastRequestTimestamp;
+        }
+
+        this.responseTimes.merge(other.responseTimes);
+        this.numReqsPerSec.merge(other.numReqsPerSec);
+        this.numFailPerSec.merge(other.numFailPerSec);
+
+        if (other.latencyHistogram != null) {
+            if (this.latencyHistogram == null) {
+                this.latencyHistogram = new LatencyHistogram(other.latencyHistogram.getSignificantDigits());
+            }
+            this.latencyHistogram.merge(other.latencyHistogram);
+        }
+    }
+
+    /**
+     * Keep every latency in a {@link LatencyHistogram} until {@link #resetLatencyHistogram()}.
+     *
+     * @param significantDigits precision of the histogram, from 1 to 5
+     * @since 2.3.0
+     */
+    public void enableLatencyHistogram(int significantDigits) {
+        this.latencyHistogram = new LatencyHistogram(significantDigits);
+    }
+
+    /**
+     * @return the latency histogram, or null if it's not enabled
+     * @since 2.3.0
+     */
+    public LatencyHistogram getLatencyHistogram() {
+        return this.latencyHistogram;
+    }
+
+    /**
+     * @since 2.3.0
+     */
+    public void resetLatencyHistogram() {
+        if (this.latencyHistogram != null) {
+            this.latencyHistogram.reset();
+        }
+    }
+
     public Map<String, Object> serialize() {
         Map<String, Object> result = new HashMap<>(13);
         result.put("name", this.name);
@@ -111,12 +258,86 @@ public class StatsEntry {
         result.put("max_response_time", this.maxResponseTime);
         result.put("min_response_time", this.minResponseTime);
         result.put("total_content_length", this.totalContentLength);
-        result.put("response_times", this.responseTimes);
-        result.put("num_reqs_per_sec", this.numReqsPerSec);
-        result.put("num_fail_per_sec", this.numFailPerSec);
+        result.put("response_times", this.responseTimes.toLongIntMap());
+        result.put("num_reqs_per_sec", this.numReqsPerSec.toLongIntMap());
+        result.put("num_fail_per_sec", this.numFailPerSec.toLongIntMap());
         return result;
     }
 
+    /**
+     * Pack the same report as {@link #serialize()} straight into a packer, without building any map.
+     * Keys are packed in the order locust serializes them, which is not part of the contract, the master reads the
+     * report as a map.
+     *
+     * @param packer the packer to pack into
+     * @throws IOException if the packer fails to write
+     * @since 2.3.0
+     */
+    public void packTo(MessagePacker packer) throws IOException {
+        if (null == this.nameBytes) {
+            this.nameBytes = utf8(this.name);
+        }
+        if (null == this.methodBytes) {
+            this.methodBytes = utf8(this.method);
+        }
+        packer.packMapHeader(14);
+        packString(packer, NAME);
+        packString(packer, this.nameBytes);
+        packString(packer, METHOD);
+        packString(packer, this.methodBytes);
+        packString(packer, LAST_REQUEST_TIMESTAMP);
+        packer.packLong(this.lastRequestTimestamp);
+        packString(packer, START_TIME);
+        packer.packLong(this.startTime);
+        packString(packer, NUM_REQUESTS);
+        packer.packLong(this.numRequests);
+        packString(packer, NUM_NONE_REQUESTS);
+        packer.packInt(0);
+        packString(packer, NUM_FAILURES);
+        packer.packLong(this.numFailures);
+        packString(packer, TOTAL_RESPONSE_TIME);
+        packer.packLong(this.totalResponseTime);
+        packString(packer, MAX_RESPONSE_TIME);
+        packer.packLong(this.maxResponseTime);
+        packString(packer, MIN_RESPONSE_TIME);
+        packer.packLong(this.minResponseTime);
+        packString(packer, TOTAL_CONTENT_LENGTH);
+        packer.packLong(this.totalContentLength);
+        packString(packer, RESPONSE_TIMES);
+        this.responseTimes.packTo(packer);
+        packString(packer, NUM_REQS_PER_SEC);
+        this.numReqsPerSec.packTo(packer);
+        packString(packer, NUM_FAIL_PER_SEC);
+        this.numFailPerSec.packTo(packer);
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void packString(MessagePacker packer, byte[] utf8) throws IOException {
+        packer.packRawStringHeader(utf8.length);
+        packer.writePayload(utf8);
+    }
+
+    /**
+     * Visit the counts of rounded response times without copying them.
+     *
+     * @param consumer receives every rounded response time and its count
+     * @since 2.3.0
+     */
+    public void forEachResponseTime(LongIntMap.EntryConsumer consumer) {
+        this.responseTimes.forEach(consumer);
+    }
+
+    /**
+     * @return number of distinct rounded response times
+     * @since 2.3.0
+     */
+    public int getNumResponseTimes() {
+        return this.responseTimes.size();
+    }
+
     public Map<String, Object> getStrippedReport() {
         Map<String, Object> report = this.serialize();
         this.reset();
@@ -129,6 +350,7 @@ public class StatsEntry {
 
     public void setName(String name) {
         this.name = name;
+        this.nameBytes = null;
     }
 
     public String getMethod() {
@@ -137,6 +359,7 @@ public class StatsEntry {
 
     public void setMethod(String method) {
         this.method = method;
+        this.methodBytes = null;
     }
 
     public long getNumRequests() {
@@ -179,20 +402,34 @@ public class StatsEntry {
         this.maxResponseTime = maxResponseTime;
     }
 
+    /**
+     * @return a copy of the number of requests per epoch second
+     */
     public LongIntMap getNumReqsPerSec() {
-        return numReqsPerSec;
+        return numReqsPerSec.toLongIntMap();
     }
 
+    /**
+     * @param numReqsPerSec number of requests per epoch second
+     */
     public void setNumReqsPerSec(LongIntMap numReqsPerSec) {
-        this.numReqsPerSec = numReqsPerSec;
+        this.numReqsPerSec.clear();
+        this.numReqsPerSec.merge(numReqsPerSec);
     }
 
+    /**
+     * @return a copy of the counts of rounded response times
+     */
     public LongIntMap getResponseTimes() {
-        return responseTimes;
+        return responseTimes.toLongIntMap();
     }
 
+    /**
+     * @param responseTimes counts of rounded response times
+     */
     public void setResponseTimes(LongIntMap responseTimes) {
-        this.responseTimes = responseTimes;
+        this.responseTimes.clear();
+        this.responseTimes.merge(responseTimes);
     }
 
     public long getTotalContentLength() {
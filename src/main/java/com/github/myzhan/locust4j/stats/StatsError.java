@@ -1,16 +1,29 @@
 package com.github.myzhan.locust4j.stats;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.github.myzhan.locust4j.utils.Utils;
+import org.msgpack.core.MessagePacker;
+
 /**
  * @author myzhan
  */
 public class StatsError {
+
+    /**
+     * Errors beyond the limit of distinct errors per report are counted as this one.
+     *
+     * @since 2.3.0
+     */
+    public static final String OTHER_ERRORS = "other errors";
+
     protected String name;
     protected String method;
     protected String error;
     protected long occurrences;
+    private String key;
 
     protected StatsError(String name, String method, String error) {
         this.name = name;
@@ -22,6 +35,38 @@ public class StatsError {
         this.occurrences++;
     }
 
+    protected void merge(StatsError other) {
+        this.occurrences += other.occurrences;
+    }
+
+    /**
+     * The key of this error in the report, it's computed once and only when reporting.
+     */
+    protected String getKey() {
+        if (null == this.key) {
+            String key = Utils.md5(method, name, String.valueOf(error));
+            this.key = null == key ? method + name + error : key;
+        }
+        return this.key;
+    }
+
+    /**
+     * Pack the same map as {@link #toMap()} straight into a packer, keys are packed in the order locust serializes
+     * them, which is not part of the contract.
+     */
+    protected void packTo(MessagePacker packer) throws IOException {
+        packer.packMapHeader(4);
+        packer.packString("name").packString(this.name);
+        packer.packString("method").packString(this.method);
+        packer.packString("error");
+        if (null == this.error) {
+            packer.packNil();
+        } else {
+            packer.packString(this.error);
+        }
+        packer.packString("occurrences").packLong(this.occurrences);
+    }
+
     protected Map<String, Object> toMap() {
         Map<String, Object> m = new HashMap<>(5);
         m.put("name", this.name);
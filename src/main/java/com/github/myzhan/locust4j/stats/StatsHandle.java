@@ -0,0 +1,117 @@
+package com.github.myzhan.locust4j.stats;
+
+/**
+ * A {@link StatsHandle} is resolved once from a request type and a name, then records test results without looking
+ * up or allocating anything.
+ *
+ * <pre>
+ * private static final StatsHandle GET_INDEX = Locust.getInstance().getStatsHandle("http", "GET /");
+ *
+ * public void execute() {
+ *     ...
+ *     GET_INDEX.success(responseTime, contentLength);
+ * }
+ * </pre>
+ *
+ * Results are aggregated by the calling thread, like the striped mode of {@link Stats}.
+ *
+ * @author myzhan
+ * @since 2.3.0
+ */
+public final class StatsHandle {
+
+    private final Stats stats;
+    private final String method;
+    private final String name;
+
+    /**
+     * Index of this handle in the entries of {@link Stats} and {@link StatsShard}.
+     */
+    final int id;
+
+    /**
+     * Set when the entry of this handle is evicted, records are sent to the handle that replaces it.
+     */
+    volatile boolean evicted;
+
+    /**
+     * The handle resolved once this one is evicted, resolved again if it's evicted too.
+     */
+    private volatile StatsHandle replacement;
+
+    StatsHandle(Stats stats, int id, String method, String name) {
+        this.stats = stats;
+        this.id = id;
+        this.method = method;
+        this.name = name;
+    }
+
+    Stats getStats() {
+        return stats;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Add a successful record.
+     *
+     * @param responseTime  how long does it take for a single test scenario, in millis
+     * @param contentLength content length in bytes
+     */
+    public void success(long responseTime, long contentLength) {
+        stats.localShard().logRequest(current(), responseTime, contentLength);
+    }
+
+    /**
+     * Add a failed record.
+     *
+     * @param responseTime how long does it take for a single test scenario, in millis
+     * @param error        error message
+     */
+    public void failure(long responseTime, String error) {
+        stats.localShard().logFailure(current(), responseTime, error);
+    }
+
+    /**
+     * Add a failed record with a throwable. Failures are aggregated by the class and the message of the throwable,
+     * and the error message is only built once per distinct error when reporting.
+     *
+     * @param responseTime how long does it take for a single test scenario, in millis
+     * @param error        the cause of the failure
+     */
+    public void failure(long responseTime, Throwable error) {
+        stats.localShard().logFailure(current(), responseTime, error);
+    }
+
+    /**
+     * Start timing a request, the timer records it when it's closed.
+     *
+     * @return a started timer
+     */
+    public RequestTimer startTimer() {
+        return stats.localShard().startTimer(current());
+    }
+
+    StatsHandle current() {
+        if (!evicted) {
+            return this;
+        }
+        StatsHandle handle = replacement;
+        if (null == handle || handle.evicted) {
+            handle = stats.getHandle(method, name).current();
+            replacement = handle;
+        }
+        return handle;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s-%s", method, name);
+    }
+}
@@ -0,0 +1,221 @@
+package com.github.myzhan.locust4j.stats;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.github.myzhan.locust4j.message.LongIntMap;
+
+/**
+ * A {@link StatsHistoryReader} converts a stats history file written by locust4j to a locust-style
+ * stats_history.csv, one row per entry and report, so the rows are as far apart as the reports of locust4j.
+ *
+ * Requests/s, Failures/s and the percentiles are computed from the report, the columns of Total are accumulated
+ * since the beginning of the file.
+ *
+ * <pre>
+ * java -cp locust4j.jar com.github.myzhan.locust4j.stats.StatsHistoryReader stats.history stats_history.csv
+ * </pre>
+ *
+ * @author myzhan
+ * @since 2.3.0
+ */
+public final class StatsHistoryReader {
+
+    private static final double[] PERCENTILES = {0.5, 0.66, 0.75, 0.8, 0.9, 0.95, 0.98, 0.99, 0.999, 0.9999, 1.0};
+    private static final String HEADER = "Timestamp,User Count,Type,Name,Requests/s,Failures/s,"
+        + "50%,66%,75%,80%,90%,95%,98%,99%,99.9%,99.99%,100%,"
+        + "Total Request Count,Total Failure Count,Total Median Response Time,Total Average Response Time,"
+        + "Total Min Response Time,Total Max Response Time,Total Average Content Size";
+
+    private StatsHistoryReader() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: StatsHistoryReader <history file> [stats_history.csv]");
+            System.exit(1);
+        }
+        File csv = new File(args.length == 2 ? args[1] : "stats_history.csv");
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(csv), StandardCharsets.UTF_8)) {
+            toCsv(new File(args[0]), out);
+        }
+    }
+
+    /**
+     * Convert a stats history file to csv.
+     *
+     * @param history the stats history file
+     * @param out     where the csv is written to
+     * @throws IOException if the file can't be read or isn't a stats history file
+     */
+    public static void toCsv(File history, Writer out) throws IOException {
+        out.write(HEADER);
+        out.write('\n');
+        Map<String, Total> totals = new HashMap<>();
+        try (RandomAccessFile raf = new RandomAccessFile(history, "r")) {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < StatsHistoryWriter.HEADER_SIZE
+                || buffer.getInt() != StatsHistoryWriter.MAGIC
+                || buffer.getInt() != StatsHistoryWriter.VERSION) {
+                throw new IOException(history + " is not a stats history file of version "
+                    + StatsHistoryWriter.VERSION);
+            }
+            while (buffer.remaining() >= 4) {
+                int length = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    // the end of the records, or a record not completely written
+                    break;
+                }
+                writeRow(buffer, totals, out);
+            }
+        }
+    }
+
+    private static void writeRow(MappedByteBuffer buffer, Map<String, Total> totals, Writer out) throws IOException {
+        long timestamp = buffer.getLong();
+        long duration = buffer.getLong();
+        int userCount = buffer.getInt();
+        String method = readString(buffer);
+        String name = readString(buffer);
+        long numRequests = buffer.getLong();
+        long numFailures = buffer.getLong();
+        long totalResponseTime = buffer.getLong();
+        long minResponseTime = buffer.getLong();
+        long maxResponseTime = buffer.getLong();
+        long totalContentLength = buffer.getLong();
+        int buckets = buffer.getInt();
+        long[] responseTimes = new long[buckets];
+        int[] counts = new int[buckets];
+        for (int i = 0; i < buckets; i++) {
+            responseTimes[i] = buffer.getLong();
+            counts[i] = buffer.getInt();
+        }
+
+        String key = method + "\u0000" + name;
+        Total total = totals.get(key);
+        if (null == total) {
+            total = new Total();
+            totals.put(key, total);
+        }
+        total.numRequests += numRequests;
+        total.numFailures += numFailures;
+        total.totalResponseTime += totalResponseTime;
+        total.totalContentLength += totalContentLength;
+        if (numRequests > 0) {
+            if (total.minResponseTime == 0 || minResponseTime < total.minResponseTime) {
+                total.minResponseTime = minResponseTime;
+            }
+            total.maxResponseTime = Math.max(total.maxResponseTime, maxResponseTime);
+        }
+        for (int i = 0; i < buckets; i++) {
+            total.responseTimes.add(responseTimes[i], counts[i]);
+        }
+
+        double seconds = duration > 0 ? duration / 1000.0 : 1.0;
+        StringBuilder row = new StringBuilder(256);
+        row.append(timestamp / 1000).append(',').append(userCount).append(',');
+        appendQuoted(row, method).append(',');
+        appendQuoted(row, name).append(',');
+        row.append(numRequests / seconds).append(',').append(numFailures / seconds);
+        sortByResponseTime(responseTimes, counts);
+        for (double percentile : PERCENTILES) {
+            row.append(',');
+            if (numRequests == 0) {
+                row.append("N/A");
+            } else {
+                row.append(percentile(responseTimes, counts, numRequests, percentile));
+            }
+        }
+        row.append(',').append(total.numRequests).append(',').append(total.numFailures).append(',');
+        if (total.numRequests == 0) {
+            row.append("0,0.0,0,0,0.0");
+        } else {
+            long[] totalResponseTimes = new long[total.responseTimes.size()];
+            int[] totalCounts = new int[totalResponseTimes.length];
+            copy(total.responseTimes, totalResponseTimes, totalCounts);
+            sortByResponseTime(totalResponseTimes, totalCounts);
+            row.append(percentile(totalResponseTimes, totalCounts, total.numRequests, 0.5)).append(',')
+                .append((double) total.totalResponseTime / total.numRequests).append(',')
+                .append(total.minResponseTime).append(',')
+                .append(total.maxResponseTime).append(',')
+                .append((double) total.totalContentLength / total.numRequests);
+        }
+        row.append('\n');
+        out.write(row.toString());
+    }
+
+    /**
+     * Same as calculate_response_time_percentile of locust.
+     */
+    static long percentile(long[] responseTimes, int[] counts, long numRequests, double percent) {
+        long numOfRequests = (long) (numRequests * percent);
+        long processedCount = 0;
+        for (int i = responseTimes.length - 1; i >= 0; i--) {
+            processedCount += counts[i];
+            if (numRequests - processedCount <= numOfRequests) {
+                return responseTimes[i];
+            }
+        }
+        return 0;
+    }
+
+    private static void copy(LongIntMap map, final long[] keys, final int[] values) {
+        final int[] i = new int[1];
+        map.forEach(new LongIntMap.EntryConsumer() {
+            @Override
+            public void accept(long key, int value) {
+                keys[i[0]] = key;
+                values[i[0]] = value;
+                i[0]++;
+            }
+        });
+    }
+
+    private static void sortByResponseTime(long[] responseTimes, int[] counts) {
+        long[] packed = new long[responseTimes.length];
+        Map<Long, Integer> byResponseTime = new HashMap<>(responseTimes.length * 2);
+        for (int i = 0; i < responseTimes.length; i++) {
+            packed[i] = responseTimes[i];
+            byResponseTime.put(responseTimes[i], counts[i]);
+        }
+        Arrays.sort(packed);
+        for (int i = 0; i < packed.length; i++) {
+            responseTimes[i] = packed[i];
+            counts[i] = byResponseTime.get(packed[i]);
+        }
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static StringBuilder appendQuoted(StringBuilder row, String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return row.append(value);
+        }
+        return row.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    private static final class Total {
+        private long numRequests;
+        private long numFailures;
+        private long totalResponseTime;
+        private long minResponseTime;
+        private long maxResponseTime;
+        private long totalContentLength;
+        private final LongIntMap responseTimes = new LongIntMap();
+    }
+}
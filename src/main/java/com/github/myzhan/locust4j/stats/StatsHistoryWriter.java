@@ -0,0 +1,250 @@
+package com.github.myzhan.locust4j.stats;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.github.myzhan.locust4j.message.LongIntMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link StatsHistoryWriter} appends the stats of every report to a memory-mapped file, one record per entry and
+ * report, which can be converted to a locust-style stats_history.csv by {@link StatsHistoryReader}. Records are
+ * written at the report interval of locust4j, not every second like the csv of locust.
+ *
+ * Reports are encoded by the reporting thread and written by a thread of its own, so recording and reporting
+ * never wait for the disk. The file is mapped in chunks, and truncated to the written records when it's closed.
+ *
+ * The layout is a header of {@link #MAGIC} and {@link #VERSION}, followed by records of a length and then the
+ * timestamp in millis, the duration in millis and the user count, the method and the name as an int length and
+ * UTF-8 bytes, the number of requests, the number of failures, the total, min and max response time, the total
+ * content length, and the counts of response times. A length of zero marks the end of the records.
+ *
+ * @author myzhan
+ * @since 2.3.0
+ */
+final class StatsHistoryWriter implements Runnable, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatsHistoryWriter.class);
+
+    static final int MAGIC = 0x4C344A48;
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 8;
+    static final String AGGREGATED = "Aggregated";
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int QUEUE_SIZE = 16;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final BlockingQueue<byte[]> reports;
+    /**
+     * Only used by the reporting thread.
+     */
+    private ByteBuffer encoder;
+    private final LongIntMap.EntryConsumer bucketEncoder;
+
+    private MappedByteBuffer chunk;
+    private long chunkStart;
+    private long position;
+
+    StatsHistoryWriter(File file) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "rw");
+        this.channel = raf.getChannel();
+        this.reports = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        this.encoder = ByteBuffer.allocate(64 * 1024);
+        this.bucketEncoder = new LongIntMap.EntryConsumer() {
+            @Override
+            public void accept(long key, int value) {
+                encoder.putLong(key);
+                encoder.putInt(value);
+            }
+        };
+        try {
+            this.position = openForAppend();
+        } catch (IOException ex) {
+            raf.close();
+            throw ex;
+        }
+        this.chunkStart = position;
+        this.chunk = channel.map(FileChannel.MapMode.READ_WRITE, chunkStart, CHUNK_SIZE);
+    }
+
+    /**
+     * Write the header to a new file, or find the end of the records of an existing one.
+     *
+     * @return the position to append at
+     */
+    private long openForAppend() throws IOException {
+        long size = channel.size();
+        if (size < HEADER_SIZE) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            return HEADER_SIZE;
+        }
+        MappedByteBuffer existing = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        if (existing.getInt() != MAGIC || existing.getInt() != VERSION) {
+            throw new IOException(file + " is not a stats history file of version " + VERSION);
+        }
+        while (existing.remaining() >= 4) {
+            int length = existing.getInt(existing.position());
+            if (length <= 0 || length > existing.remaining() - 4) {
+                break;
+            }
+            existing.position(existing.position() + 4 + length);
+        }
+        return existing.position();
+    }
+
+    /**
+     * Encode the stats of a report and hand them over, called by the reporting thread before the entries are reset.
+     */
+    void offer(long timestamp, long duration, int userCount, StatsEntry[] entries, StatsEntry total) {
+        byte[] records = encode(timestamp, duration, userCount, entries, total);
+        if (!reports.offer(records)) {
+            logger.warn("The stats history writer falls behind, a report is not written to {}", file);
+        }
+    }
+
+    @Override
+    public void run() {
+        String name = Thread.currentThread().getName();
+        Thread.currentThread().setName(name + "stats-history");
+
+        try {
+            while (true) {
+                byte[] records;
+                try {
+                    records = reports.take();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                try {
+                    write(records);
+                } catch (IOException ex) {
+                    logger.error("Failed to write the stats history to {}", file, ex);
+                }
+            }
+        } finally {
+            byte[] records;
+            while ((records = reports.poll()) != null) {
+                try {
+                    write(records);
+                } catch (IOException ex) {
+                    logger.error("Failed to write the stats history to {}", file, ex);
+                }
+            }
+            try {
+                close();
+            } catch (IOException ex) {
+                logger.error("Failed to close the stats history file {}", file, ex);
+            }
+        }
+    }
+
+    /**
+     * Encode the records of a report into the reusable encoder, and copy them out.
+     */
+    byte[] encode(long timestamp, long duration, int userCount, StatsEntry[] entries, StatsEntry total) {
+        encoder.clear();
+        for (StatsEntry entry : entries) {
+            if (null != entry && (entry.getNumRequests() != 0 || entry.getNumFailures() != 0)) {
+                encode(timestamp, duration, userCount, entry.getMethod(), entry.getName(), entry);
+            }
+        }
+        encode(timestamp, duration, userCount, "", AGGREGATED, total);
+        byte[] records = new byte[encoder.position()];
+        encoder.flip();
+        encoder.get(records);
+        return records;
+    }
+
+    private void encode(long timestamp, long duration, int userCount, String method, String name,
+                        StatsEntry entry) {
+        byte[] methodBytes = method.getBytes(StandardCharsets.UTF_8);
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int length = 8 + 8 + 4 + 4 + methodBytes.length + 4 + nameBytes.length + 6 * 8 + 4
+            + entry.getNumResponseTimes() * 12;
+        if (encoder.remaining() < 4 + length) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(encoder.capacity() * 2, encoder.position() + 4 + length));
+            encoder.flip();
+            larger.put(encoder);
+            encoder = larger;
+        }
+
+        encoder.putInt(length);
+        encoder.putLong(timestamp);
+        encoder.putLong(duration);
+        encoder.putInt(userCount);
+        encoder.putInt(methodBytes.length);
+        encoder.put(methodBytes);
+        encoder.putInt(nameBytes.length);
+        encoder.put(nameBytes);
+        encoder.putLong(entry.getNumRequests());
+        encoder.putLong(entry.getNumFailures());
+        encoder.putLong(entry.getTotalResponseTime());
+        encoder.putLong(entry.getMinResponseTime());
+        encoder.putLong(entry.getMaxResponseTime());
+        encoder.putLong(entry.getTotalContentLength());
+        encoder.putInt(entry.getNumResponseTimes());
+        entry.forEachResponseTime(bucketEncoder);
+    }
+
+    /**
+     * Copy encoded records into the file, the length of every record is written last,
+     * so a record is only visible when it's complete.
+     */
+    void write(byte[] records) throws IOException {
+        ensureCapacity(records.length + 4);
+        ByteBuffer source = ByteBuffer.wrap(records);
+        while (source.remaining() >= 4) {
+            int length = source.getInt();
+            int start = chunk.position();
+            chunk.position(start + 4);
+            chunk.put(records, source.position(), length);
+            chunk.putInt(start, length);
+            source.position(source.position() + length);
+        }
+        position = chunkStart + chunk.position();
+    }
+
+    /**
+     * Map a new chunk at the end of the records if the current one can't hold the next record and an end mark.
+     */
+    private void ensureCapacity(int size) throws IOException {
+        if (chunk.remaining() >= size) {
+            return;
+        }
+        chunk.force();
+        chunkStart = position;
+        chunk = channel.map(FileChannel.MapMode.READ_WRITE, chunkStart, Math.max(CHUNK_SIZE, size));
+        if (chunk.remaining() < size) {
+            throw new BufferOverflowException();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            chunk.force();
+            channel.truncate(position);
+        } finally {
+            raf.close();
+        }
+    }
+}
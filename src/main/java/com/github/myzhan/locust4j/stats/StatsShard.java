@@ -0,0 +1,349 @@
+package com.github.myzhan.locust4j.stats;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A {@link StatsShard} aggregates the records of a single thread, indexed by {@link StatsHandle}.
+ *
+ * The owner thread is the only writer, so the monitor is never contended except when the stats thread drains the
+ * shard once per report interval. Draining swaps the active slots with the spare ones, which are merged and reset
+ * in place outside the monitor, so recording allocates nothing in the steady state. The padding fields keep the hot
+ * fields of two shards allocated side by side from sharing a cache line.
+ *
+ * @author myzhan
+ * @since 2.3.0
+ */
+final class StatsShard {
+
+    long p01, p02, p03, p04, p05, p06, p07;
+
+    private final Thread owner;
+    private Slot[] active;
+    private Slot[] spare;
+    /**
+     * Closed timers waiting to be reused, only accessed by the owner thread.
+     */
+    private final ArrayDeque<RequestTimer> timers;
+
+    long p11, p12, p13, p14, p15, p16, p17;
+
+    StatsShard(Thread owner) {
+        this.owner = owner;
+        this.active = new Slot[16];
+        this.spare = new Slot[16];
+        this.timers = new ArrayDeque<>(4);
+    }
+
+    boolean isOwnerAlive() {
+        return owner.isAlive();
+    }
+
+    private Slot slot(StatsHandle handle) {
+        Slot[] slots = this.active;
+        if (handle.id >= slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(handle.id + 1, slots.length * 2));
+            this.active = slots;
+        }
+        Slot slot = slots[handle.id];
+        if (null == slot || slot.handle != handle) {
+            // the id of an evicted handle is reused
+            slot = new Slot(handle);
+            slots[handle.id] = slot;
+        }
+        return slot;
+    }
+
+    synchronized void logRequest(StatsHandle handle, long responseTime, long contentLength) {
+        Slot slot = slot(handle);
+        int weight = slot.sample(responseTime * 1000000, contentLength);
+        if (weight > 0) {
+            slot.entry.log(responseTime, contentLength, weight);
+        }
+    }
+
+    synchronized void logFailure(StatsHandle handle, long responseTime, String error) {
+        Slot slot = slot(handle);
+        slot.entry.log(responseTime, 0);
+        slot.entry.logError(error);
+        slot.error(error).occured();
+    }
+
+    synchronized void logFailure(StatsHandle handle, long responseTime, Throwable error) {
+        Slot slot = slot(handle);
+        slot.entry.log(responseTime, 0);
+        slot.entry.logError(null);
+        ThrowableError throwable = slot.throwable(error);
+        if (null != throwable) {
+            throwable.occurrences++;
+        } else {
+            // the same error message as a tracked throwable would be rendered to
+            slot.error(handle.getStats().describeThrowable(error)).occured();
+        }
+    }
+
+    synchronized void logRequestNanos(StatsHandle handle, long responseTimeNanos, long contentLength) {
+        Slot slot = slot(handle);
+        int weight = slot.sample(responseTimeNanos, contentLength);
+        if (weight > 0) {
+            slot.entry.logNanos(responseTimeNanos, contentLength, weight);
+        }
+    }
+
+    synchronized void logFailureNanos(StatsHandle handle, long responseTimeNanos, String error) {
+        Slot slot = slot(handle);
+        slot.entry.logNanos(responseTimeNanos, 0);
+        slot.entry.logError(error);
+        slot.error(error).occured();
+    }
+
+    RequestTimer startTimer(StatsHandle handle) {
+        RequestTimer timer = timers.poll();
+        if (null == timer) {
+            timer = new RequestTimer(this);
+        }
+        return timer.start(handle);
+    }
+
+    void releaseTimer(RequestTimer timer) {
+        timers.push(timer);
+    }
+
+    /**
+     * Hand over everything recorded so far to the stats.
+     * Only the swap happens under the monitor, merging and resetting are done outside.
+     *
+     * @return true if the shard had recorded anything
+     */
+    boolean drainTo(Stats stats) {
+        Slot[] drained;
+        synchronized (this) {
+            drained = this.active;
+            for (Slot slot : drained) {
+                if (null != slot) {
+                    slot.flushSkipped();
+                }
+            }
+            this.active = this.spare;
+            this.spare = drained;
+        }
+        boolean recorded = false;
+        for (Slot slot : drained) {
+            if (null != slot && slot.drainTo(stats)) {
+                recorded = true;
+            }
+        }
+        return recorded;
+    }
+
+    synchronized void clear() {
+        for (Slot slot : this.active) {
+            if (null != slot) {
+                slot.reset();
+            }
+        }
+    }
+
+    private static final class Slot {
+        private final StatsHandle handle;
+        private final StatsEntry entry;
+        /**
+         * Keyed by the normalized error message, errors not seen during the last interval are removed when draining.
+         */
+        private final Map<String, StatsError> errors;
+        private int numErrors;
+        /**
+         * Failures recorded with a throwable, rendered to messages when draining.
+         */
+        private ThrowableError[] throwables;
+        private int numThrowables;
+        /**
+         * Successful records of this handle skipped since the last sampled one, and the last of them, they're
+         * flushed into the entry before the slot is drained.
+         */
+        private int skipped;
+        private long skippedNanos;
+        private long skippedContentLength;
+
+        private Slot(StatsHandle handle) {
+            this.handle = handle;
+            this.entry = new StatsEntry(handle.getName(), handle.getMethod());
+            this.entry.reset();
+            int digits = handle.getStats().getLatencyHistogramDigits();
+            if (digits > 0) {
+                this.entry.enableLatencyHistogram(digits);
+            }
+            this.errors = new HashMap<>(4);
+        }
+
+        /**
+         * In the sampling mode, only the last one of every N successful records of a handle is logged, standing for
+         * all of them.
+         *
+         * @return the weight of the record, or 0 if it's skipped
+         */
+        private int sample(long responseTimeNanos, long contentLength) {
+            int sampleRate = handle.getStats().getSampleRate();
+            if (sampleRate <= 1 && skipped == 0) {
+                return 1;
+            }
+            int weight = skipped + 1;
+            if (weight < sampleRate) {
+                skipped = weight;
+                skippedNanos = responseTimeNanos;
+                skippedContentLength = contentLength;
+                return 0;
+            }
+            skipped = 0;
+            return weight;
+        }
+
+        /**
+         * Log the records skipped since the last sampled one, standing for all of them, so every report counts all
+         * the requests of the interval, even of a handle with fewer requests than the sample rate.
+         */
+        private void flushSkipped() {
+            if (skipped > 0) {
+                entry.logNanos(skippedNanos, skippedContentLength, skipped);
+                skipped = 0;
+            }
+        }
+
+        private StatsError error(String error) {
+            Stats stats = handle.getStats();
+            error = stats.normalizeError(error);
+            StatsError entry = this.errors.get(error);
+            if (null == entry || entry.occurrences == 0) {
+                // a distinct error of this interval
+                if (this.numErrors >= stats.getMaxErrors()) {
+                    error = StatsError.OTHER_ERRORS;
+                    entry = this.errors.get(error);
+                }
+                if (null == entry) {
+                    entry = new StatsError(handle.getName(), handle.getMethod(), error);
+                    this.errors.put(error, entry);
+                }
+                if (entry.occurrences == 0) {
+                    this.numErrors++;
+                }
+            }
+            return entry;
+        }
+
+        /**
+         * Throwables are told apart by their class and the identity of their message, which is the same string for
+         * messages of string literals, without building or comparing any message.
+         *
+         * @return the tracked throwable, or null beyond the limit of distinct messages, then the error message is
+         * built and counted like a string error, under the same key the tracked throwable would be reported with
+         */
+        private ThrowableError throwable(Throwable error) {
+            Class<?> type = error.getClass();
+            String message = error.getMessage();
+            for (int i = 0; i < numThrowables; i++) {
+                ThrowableError throwable = throwables[i];
+                if (throwable.type == type && throwable.message == message) {
+                    return throwable;
+                }
+            }
+            if (numThrowables < MAX_THROWABLE_MESSAGES) {
+                return addThrowable(new ThrowableError(type, message, error));
+            }
+            return null;
+        }
+
+        private ThrowableError addThrowable(ThrowableError throwable) {
+            if (null == throwables) {
+                throwables = new ThrowableError[4];
+            } else if (numThrowables == throwables.length) {
+                throwables = Arrays.copyOf(throwables, numThrowables * 2);
+            }
+            throwables[numThrowables++] = throwable;
+            return throwable;
+        }
+
+        private void drainThrowables(Stats stats) {
+            int kept = 0;
+            for (int i = 0; i < numThrowables; i++) {
+                ThrowableError throwable = throwables[i];
+                if (throwable.occurrences == 0) {
+                    // not seen during the last interval
+                    continue;
+                }
+                stats.merge(handle, throwable.render(stats), throwable.occurrences);
+                throwable.occurrences = 0;
+                throwables[kept++] = throwable;
+            }
+            for (int i = kept; i < numThrowables; i++) {
+                throwables[i] = null;
+            }
+            numThrowables = kept;
+        }
+
+        private boolean drainTo(Stats stats) {
+            if (entry.getNumRequests() == 0 && entry.getNumFailures() == 0) {
+                return false;
+            }
+            stats.merge(handle, entry);
+            drainThrowables(stats);
+            Iterator<StatsError> iter = errors.values().iterator();
+            while (iter.hasNext()) {
+                StatsError error = iter.next();
+                if (error.occurrences == 0) {
+                    // not seen during the last interval
+                    iter.remove();
+                } else {
+                    stats.merge(handle, error);
+                }
+            }
+            reset();
+            return true;
+        }
+
+        private void reset() {
+            skipped = 0;
+            entry.reset();
+            entry.resetLatencyHistogram();
+            for (StatsError error : errors.values()) {
+                error.occurrences = 0;
+            }
+            numErrors = 0;
+            for (int i = 0; i < numThrowables; i++) {
+                throwables[i].occurrences = 0;
+            }
+        }
+    }
+
+    /**
+     * Distinct messages of throwables tracked per slot and interval, the error messages of the others are built.
+     */
+    private static final int MAX_THROWABLE_MESSAGES = 64;
+
+    private static final class ThrowableError {
+        private final Class<?> type;
+        private final String message;
+        /**
+         * The first throwable seen, it's released once rendered.
+         */
+        private Throwable sample;
+        private String rendered;
+        private long occurrences;
+
+        private ThrowableError(Class<?> type, String message, Throwable sample) {
+            this.type = type;
+            this.message = message;
+            this.sample = sample;
+        }
+
+        private String render(Stats stats) {
+            if (null == rendered) {
+                rendered = stats.normalizeError(stats.describeThrowable(sample));
+                sample = null;
+            }
+            return rendered;
+        }
+    }
+}
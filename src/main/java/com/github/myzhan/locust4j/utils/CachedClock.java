@@ -0,0 +1,65 @@
+package com.github.myzhan.locust4j.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A {@link CachedClock} is a coarse clock for the hot path, a background thread updates the cached timestamp at a
+ * fixed interval, so reading the time is a volatile read instead of a call to {@link System#currentTimeMillis()}.
+ *
+ * The thread wakes up once per tick until the clock is stopped, so pick a tick as coarse as the timestamps allow.
+ * It's opt-in, install it with {@link Utils#setClock(Clock)}.
+ *
+ * @author myzhan
+ * @since 2.3.0
+ */
+public class CachedClock implements Clock {
+
+    private final long tickNanos;
+    private volatile long millis;
+    private volatile boolean stopped;
+
+    /**
+     * @param tick     the resolution of this clock
+     * @param tickUnit the time unit
+     */
+    public CachedClock(long tick, TimeUnit tickUnit) {
+        this.tickNanos = tickUnit.toNanos(tick);
+        this.millis = System.currentTimeMillis();
+
+        Thread ticker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!stopped) {
+                    millis = System.currentTimeMillis();
+                    LockSupport.parkNanos(tickNanos);
+                }
+            }
+        });
+        ticker.setName("locust4j-cached-clock");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return millis;
+    }
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        Thread.sleep(millis);
+    }
+
+    /**
+     * Stop the background thread, the cached timestamp won't change any more.
+     */
+    public void stop() {
+        this.stopped = true;
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.myzhan.locust4j.utils;
+
+/**
+ * A {@link Clock} tells the time to locust4j, so that the hot path can read a cached time and tests can control
+ * the time.
+ *
+ * @author myzhan
+ * @since 2.3.0
+ */
+public interface Clock {
+
+    /**
+     * Get the current timestamp in millis.
+     *
+     * @return milliseconds since the epoch
+     */
+    long currentTimeMillis();
+
+    /**
+     * Get a monotonic time for measuring durations, it has nothing to do with the wall-clock time.
+     *
+     * @return monotonic time in nanos
+     */
+    long nanoTime();
+
+    /**
+     * Sleep for a while, measured by this clock.
+     *
+     * @param millis how long to sleep
+     * @throws InterruptedException if the current thread is interrupted
+     */
+    void sleep(long millis) throws InterruptedException;
+}
@@ -0,0 +1,36 @@
+package com.github.myzhan.locust4j.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link MonotonicClock} is based on {@link System#nanoTime()}, the timestamp it tells never goes backwards even if
+ * the wall-clock time is adjusted, which makes it suitable for measuring durations.
+ *
+ * @author myzhan
+ * @since 2.3.0
+ */
+public class MonotonicClock implements Clock {
+
+    private final long startMillis;
+    private final long startNanos;
+
+    public MonotonicClock() {
+        this.startMillis = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return startMillis + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        Thread.sleep(millis);
+    }
+}
@@ -0,0 +1,26 @@
+package com.github.myzhan.locust4j.utils;
+
+/**
+ * A {@link SystemClock} reads {@link System#currentTimeMillis()} and {@link System#nanoTime()} every time it's asked,
+ * it's the default clock of locust4j.
+ *
+ * @author myzhan
+ * @since 2.3.0
+ */
+public class SystemClock implements Clock {
+
+    @Override
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        Thread.sleep(millis);
+    }
+}
@@ -15,6 +15,8 @@ public class Utils {
 
     private static final Logger logger = LoggerFactory.getLogger(Utils.class);
 
+    private static volatile Clock clock;
+
     public static String md5(String... inputs) {
         try {
             MessageDigest messageDigest = MessageDigest.getInstance("MD5");
@@ -62,13 +64,51 @@ public class Utils {
         return (long)result;
     }
 
+    /**
+     * Get the clock used by locust4j, defaults to a {@link SystemClock}.
+     *
+     * @return the clock
+     * @since 2.3.0
+     */
+    public static Clock getClock() {
+        Clock current = clock;
+        if (current == null) {
+            synchronized (Utils.class) {
+                current = clock;
+                if (current == null) {
+                    current = new SystemClock();
+                    clock = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Replace the clock used by locust4j, like a {@link CachedClock} on the load generator, or a {@link VirtualClock}
+     * in unit tests. A {@link CachedClock} replaced by another clock is stopped.
+     *
+     * @param newClock the clock
+     * @since 2.3.0
+     */
+    public static void setClock(Clock newClock) {
+        Clock previous;
+        synchronized (Utils.class) {
+            previous = clock;
+            clock = newClock;
+        }
+        if (previous instanceof CachedClock && previous != newClock) {
+            ((CachedClock) previous).stop();
+        }
+    }
+
     /**
      * Get the current timestamp in millis.
      *
      * @return current timestamp in millis
      */
     public static long now() {
-        return System.currentTimeMillis();
+        return getClock().currentTimeMillis();
     }
 
     /**
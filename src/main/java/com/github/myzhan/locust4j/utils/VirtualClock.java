@@ -0,0 +1,51 @@
+package com.github.myzhan.locust4j.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link VirtualClock} only moves when it's advanced, it's used by unit tests to control the time. Threads sleeping
+ * on this clock wake up when the clock is advanced past their deadlines.
+ *
+ * @author myzhan
+ * @since 2.3.0
+ */
+public class VirtualClock implements Clock {
+
+    private long nanos;
+
+    /**
+     * @param millis the initial timestamp in millis
+     */
+    public VirtualClock(long millis) {
+        this.nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Override
+    public synchronized long currentTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    @Override
+    public synchronized long nanoTime() {
+        return nanos;
+    }
+
+    @Override
+    public synchronized void sleep(long millis) throws InterruptedException {
+        long deadline = nanos + TimeUnit.MILLISECONDS.toNanos(millis);
+        while (nanos < deadline) {
+            this.wait();
+        }
+    }
+
+    /**
+     * Move the clock forward, and wake up the sleeping threads.
+     *
+     * @param duration how long to advance
+     * @param unit     the time unit
+     */
+    public synchronized void advance(long duration, TimeUnit unit) {
+        this.nanos += unit.toNanos(duration);
+        this.notifyAll();
+    }
+}
@@ -4,15 +4,16 @@ import com.github.myzhan.locust4j.ratelimit.AbstractRateLimiter;
 import com.github.myzhan.locust4j.ratelimit.StableRateLimiter;
 import com.github.myzhan.locust4j.runtime.Runner;
 import com.github.myzhan.locust4j.runtime.RunnerState;
-import com.github.myzhan.locust4j.stats.RequestFailure;
-import com.github.myzhan.locust4j.stats.RequestSuccess;
+import com.github.myzhan.locust4j.stats.SampleRingBuffer;
 import com.github.myzhan.locust4j.stats.Stats;
+import com.github.myzhan.locust4j.stats.StatsHandle;
 import org.junit.Test;
 
 import java.util.ArrayList;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -168,25 +169,50 @@ public class TestLocust {
         assertTrue("onStop must be called", task.onStopCalled);
     }
 
+    private static class LastSample implements SampleRingBuffer.SampleHandler {
+        private StatsHandle handle;
+        private long responseTime;
+        private long contentLength;
+        private String error;
+
+        @Override
+        public void onSample(StatsHandle handle, long responseTime, long contentLength, String error) {
+            this.handle = handle;
+            this.responseTime = responseTime;
+            this.contentLength = contentLength;
+            this.error = error;
+        }
+    }
+
     @Test
     public void TestRecordSuccess() {
+        SampleRingBuffer buffer = Stats.getInstance().getSampleBuffer();
+        buffer.drain(new LastSample(), Integer.MAX_VALUE);
+
         Locust.getInstance().recordSuccess("http", "success", 1, 10);
-        RequestSuccess success = Stats.getInstance().getReportSuccessQueue().poll();
-        assertEquals("http", success.getRequestType());
-        assertEquals("success", success.getName());
-        assertEquals(1, success.getResponseTime());
-        assertEquals(10, success.getContentLength());
+
+        LastSample success = new LastSample();
+        assertEquals(1, buffer.drain(success, Integer.MAX_VALUE));
+        assertEquals("http", success.handle.getMethod());
+        assertEquals("success", success.handle.getName());
+        assertEquals(1, success.responseTime);
+        assertEquals(10, success.contentLength);
+        assertNull(success.error);
     }
 
     @Test
     public void TestRecordFailure() {
-        Stats.getInstance().getReportFailureQueue().clear();
+        SampleRingBuffer buffer = Stats.getInstance().getSampleBuffer();
+        buffer.drain(new LastSample(), Integer.MAX_VALUE);
+
         Locust.getInstance().recordFailure("http", "failure", 1, "error");
-        RequestFailure failure = Stats.getInstance().getReportFailureQueue().poll();
-        assertEquals("http", failure.getRequestType());
-        assertEquals("failure", failure.getName());
-        assertEquals(1, failure.getResponseTime());
-        assertEquals("error", failure.getError());
+
+        LastSample failure = new LastSample();
+        assertEquals(1, buffer.drain(failure, Integer.MAX_VALUE));
+        assertEquals("http", failure.handle.getMethod());
+        assertEquals("failure", failure.handle.getName());
+        assertEquals(1, failure.responseTime);
+        assertEquals("error", failure.error);
     }
 
     @Test
@@ -3,6 +3,7 @@ package com.github.myzhan.locust4j.message;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 /**
  * @author myzhan
@@ -26,4 +27,43 @@ public class TestLongIntMap {
 
         assertEquals("{1000=2}", map.toString());
     }
+
+    @Test
+    public void TestMerge() {
+        LongIntMap map = new LongIntMap();
+        map.add(1000L);
+
+        LongIntMap other = new LongIntMap();
+        other.add(1000L);
+        other.add(2000L);
+
+        map.merge(other);
+
+        assertEquals(2, (int)map.get(1000L));
+        assertEquals(1, (int)map.get(2000L));
+    }
+
+    @Test
+    public void TestGrowAndClear() {
+        LongIntMap map = new LongIntMap();
+        for (long i = 0; i < 1000; i++) {
+            map.add(i * 1000, (int) i + 1);
+        }
+        assertEquals(1000, map.size());
+        for (long i = 0; i < 1000; i++) {
+            assertEquals(i + 1, (long) map.get(i * 1000));
+        }
+        assertNull(map.get(1L));
+
+        int capacity = map.capacity();
+        map.clear();
+        assertEquals(0, map.size());
+        assertNull(map.get(0L));
+        assertEquals(capacity, map.capacity());
+
+        map.add(-1L);
+        map.add(Long.MIN_VALUE, 3);
+        assertEquals(1, (int) map.get(-1L));
+        assertEquals(3, (int) map.get(Long.MIN_VALUE));
+    }
 }
@@ -47,4 +47,18 @@ public class TestMessage {
         assertEquals(new ArrayList<String>(Arrays.asList("foo", "bar")),message2.getData().get("array"));
         assertEquals("nodeId", message2.getNodeID());
     }
+
+    @Test
+    public void TestEncodeAndDecodeOtherData() throws Exception {
+        Message list = new Message(new Message("test", Arrays.asList("foo", 1L), -1, "nodeId").getBytes());
+        assertEquals(Arrays.asList("foo", 1), list.getPayload());
+        assertNull(list.getData());
+        assertNull(list.getField("foo"));
+        assertEquals("nodeId", list.getNodeID());
+
+        Message string = new Message(new Message("test", "foo", -1, "nodeId").getBytes());
+        assertEquals("foo", string.getPayload());
+        assertNull(string.getData());
+        assertEquals("nodeId", string.getNodeID());
+    }
 }
@@ -0,0 +1,86 @@
+package com.github.myzhan.locust4j.message;
+
+import java.math.BigInteger;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
+import org.msgpack.value.ExtensionValue;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author myzhan
+ */
+public class TestMessageDecoder {
+
+    private static byte[] packSpawn() throws Exception {
+        MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+        packer.packArrayHeader(3);
+        packer.packString("spawn");
+        packer.packMapHeader(10);
+        packer.packString("int64").packLong(Long.MAX_VALUE);
+        packer.packString("uint64").packBigInteger(BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE));
+        packer.packString("uint32").packLong(0xFFFFFFFFL);
+        packer.packString("double").packDouble(0.1);
+        packer.packString("binary").packBinaryHeader(3).writePayload(new byte[] {1, 2, 3});
+        packer.packString("timestamp").packTimestamp(Instant.ofEpochSecond(1700000000L, 123));
+        packer.packString("extension").packExtensionTypeHeader((byte) 1, 2).writePayload(new byte[] {4, 5});
+        packer.packString("array").packArrayHeader(4).packString("foo").packInt(1).packNil();
+        packer.packArrayHeader(1).packMapHeader(1).packString("bar").packBoolean(true);
+        packer.packInt(1).packString("key is not a string");
+        packer.packString("user_classes_count").packMapHeader(2).packString("UserA").packInt(10);
+        packer.packString("UserB").packInt(20);
+        packer.packString("node");
+        packer.close();
+        return packer.toByteArray();
+    }
+
+    @Test
+    public void TestDecodeAllTypes() throws Exception {
+        Message message = new Message(packSpawn());
+        assertEquals("spawn", message.getType());
+        assertEquals("node", message.getNodeID());
+
+        Map<String, Object> data = message.getData();
+        assertEquals(Long.MAX_VALUE, data.get("int64"));
+        assertEquals(BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE), data.get("uint64"));
+        assertEquals(0xFFFFFFFFL, data.get("uint32"));
+        assertEquals(0.1, data.get("double"));
+        assertArrayEquals(new byte[] {1, 2, 3}, (byte[]) data.get("binary"));
+        assertEquals(Instant.ofEpochSecond(1700000000L, 123), data.get("timestamp"));
+        ExtensionValue extension = (ExtensionValue) data.get("extension");
+        assertEquals(1, extension.getType());
+        assertArrayEquals(new byte[] {4, 5}, extension.getData());
+
+        List<?> array = (List<?>) data.get("array");
+        assertEquals("foo", array.get(0));
+        assertEquals(1, array.get(1));
+        assertNull(array.get(2));
+        assertEquals(true, ((Map<?, ?>) ((List<?>) array.get(3)).get(0)).get("bar"));
+        assertEquals("key is not a string", ((Map<?, ?>) (Map<?, ?>) data).get(1));
+    }
+
+    @Test
+    public void TestGetFieldWithoutDecodingData() throws Exception {
+        Message message = new Message(packSpawn());
+
+        Map<?, ?> userClassesCount = (Map<?, ?>) message.getField("user_classes_count");
+        assertEquals(10, userClassesCount.get("UserA"));
+        assertEquals(20, userClassesCount.get("UserB"));
+        assertEquals(Long.MAX_VALUE, message.getField("int64"));
+        assertNull(message.getField("missing"));
+
+        // fields are read from the decoded data afterwards
+        assertTrue(message.getData().containsKey("user_classes_count"));
+        assertEquals(userClassesCount, message.getField("user_classes_count"));
+        assertEquals(Arrays.asList("foo", 1, null), ((List<?>) message.getField("array")).subList(0, 3));
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.myzhan.locust4j.message;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePacker;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * @author myzhan
+ */
+public class TestMessageEncoder {
+
+    private static void pack(MessagePacker packer, int numValues, byte[] payload) throws Exception {
+        packer.packArrayHeader(numValues + 1);
+        for (int i = 0; i < numValues; i++) {
+            packer.packString("value" + i);
+        }
+        packer.packBinaryHeader(payload.length);
+        packer.writePayload(payload);
+    }
+
+    @Test
+    public void TestGrowAndReuse() throws Exception {
+        MessageEncoder encoder = new MessageEncoder(16);
+        byte[] payload = new byte[20000];
+        Arrays.fill(payload, (byte) 7);
+
+        for (int numValues : new int[] {1, 5000, 3}) {
+            MessageBufferPacker expected = MessagePack.newDefaultBufferPacker();
+            pack(expected, numValues, payload);
+
+            pack(encoder.begin(), numValues, payload);
+            assertArrayEquals(expected.toByteArray(), encoder.toByteArray());
+        }
+    }
+
+    @Test
+    public void TestBeginDiscardsPackedBytes() throws Exception {
+        MessageEncoder encoder = new MessageEncoder();
+        encoder.begin().packString("discarded");
+        encoder.begin().packInt(1);
+        assertArrayEquals(new byte[] {1}, encoder.toByteArray());
+    }
+}
@@ -2,16 +2,25 @@ package com.github.myzhan.locust4j.message;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.msgpack.core.MessageBufferPacker;
 import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePacker;
+import org.msgpack.core.MessageUnpacker;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 /**
  * @author myzhan
@@ -108,4 +117,78 @@ public class TestVisitor {
     public void TestVisitUnknownType() throws IOException {
         visitor.visit(BigDecimal.ONE);
     }
+
+    @Test
+    public void TestVisitPrimitiveArrays() throws IOException {
+        visitor.visit(new long[] {Long.MAX_VALUE, 1L});
+        visitor.visit(new int[] {1, 2, 3});
+        visitor.visit(new double[] {0.5});
+
+        MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(packer.toByteArray());
+        assertEquals(Arrays.asList(Long.MAX_VALUE, 1), MessageDecoder.decodeValue(unpacker));
+        assertEquals(Arrays.asList(1, 2, 3), MessageDecoder.decodeValue(unpacker));
+        assertEquals(Arrays.asList(0.5), MessageDecoder.decodeValue(unpacker));
+    }
+
+    @Test
+    public void TestVisitRegisteredCodec() throws IOException {
+        CodecRegistry codecs = new CodecRegistry();
+        codecs.register(BigDecimal.class, new Codec<BigDecimal>() {
+            @Override
+            public void pack(MessagePacker packer, BigDecimal value, Visitor visitor) throws IOException {
+                visitor.visit(value.toPlainString());
+            }
+        });
+        visitor = new Visitor(packer, codecs);
+        Map<String, Object> m = new HashMap<>();
+        m.put("foo", BigDecimal.TEN);
+        visitor.visit(m);
+
+        MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(packer.toByteArray());
+        assertEquals("10", MessageDecoder.decodeMap(unpacker).get("foo"));
+        // the default registry is left alone
+        assertNull(CodecRegistry.getDefault().lookup(BigDecimal.class));
+    }
+
+    @Test
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void TestVisitMostSpecificCodec() throws IOException {
+        CodecRegistry codecs = new CodecRegistry();
+        Class<SortedMap<?, ?>> sortedMap = (Class) SortedMap.class;
+        codecs.register(sortedMap, new Codec<SortedMap<?, ?>>() {
+            @Override
+            public void pack(MessagePacker packer, SortedMap<?, ?> value, Visitor visitor) throws IOException {
+                // only the keys, in order
+                packer.packArrayHeader(value.size());
+                for (Object key : value.keySet()) {
+                    visitor.visit(key);
+                }
+            }
+        });
+        visitor = new Visitor(packer, codecs);
+        Map<String, Object> sorted = new TreeMap<>();
+        sorted.put("b", 2);
+        sorted.put("a", 1);
+        visitor.visit(sorted);
+        Map<String, Object> unsorted = new HashMap<>();
+        unsorted.put("a", 1);
+        visitor.visit(unsorted);
+
+        // the codec of SortedMap is picked over the one of Map, which was registered first
+        MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(packer.toByteArray());
+        assertEquals(Arrays.asList("a", "b"), MessageDecoder.decodeValue(unpacker));
+        assertEquals(unsorted, MessageDecoder.decodeValue(unpacker));
+    }
+
+    @Test
+    public void TestVisitDecodedValues() throws IOException {
+        BigInteger uint64 = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+        visitor.visit(Arrays.asList(new byte[] {1, 2}, uint64, Instant.ofEpochSecond(1, 2)));
+
+        MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(packer.toByteArray());
+        List<?> list = (List<?>) MessageDecoder.decodeValue(unpacker);
+        assertArrayEquals(new byte[] {1, 2}, (byte[]) list.get(0));
+        assertEquals(uint64, list.get(1));
+        assertEquals(Instant.ofEpochSecond(1, 2), list.get(2));
+    }
 }
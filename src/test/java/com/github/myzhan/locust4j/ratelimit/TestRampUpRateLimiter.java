@@ -1,9 +1,11 @@
 package com.github.myzhan.locust4j.ratelimit;
 
+import com.github.myzhan.locust4j.utils.VirtualClock;
 import org.junit.Test;
 
 import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -41,4 +43,41 @@ public class TestRampUpRateLimiter {
         abstractRateLimiter.stop();
         assertTrue(abstractRateLimiter.isStopped());
     }
+
+    @Test
+    public void TestRampUpWithVirtualClock() {
+        VirtualClock clock = new VirtualClock(0);
+        RampUpRateLimiter rateLimiter = new RampUpRateLimiter(25, 10, 100, TimeUnit.MILLISECONDS,
+                1, TimeUnit.HOURS, clock);
+        rateLimiter.start();
+
+        assertEquals(10, rateLimiter.currentThreshold());
+        clock.advance(99, TimeUnit.MILLISECONDS);
+        assertEquals(10, rateLimiter.currentThreshold());
+        clock.advance(1, TimeUnit.MILLISECONDS);
+        assertEquals(20, rateLimiter.currentThreshold());
+        clock.advance(100, TimeUnit.MILLISECONDS);
+        assertEquals(25, rateLimiter.currentThreshold());
+        clock.advance(1, TimeUnit.DAYS);
+        assertEquals(25, rateLimiter.currentThreshold());
+
+        // permits are refilled from the threshold
+        rateLimiter.refill();
+        for (int i = 0; i < 25; i++) {
+            assertFalse(rateLimiter.acquire());
+        }
+
+        rateLimiter.stop();
+    }
+
+    @Test
+    public void TestRampUpOverflow() {
+        VirtualClock clock = new VirtualClock(0);
+        RampUpRateLimiter rateLimiter = new RampUpRateLimiter(Long.MAX_VALUE, Long.MAX_VALUE / 2, 1, TimeUnit.SECONDS,
+                1, TimeUnit.HOURS, clock);
+        rateLimiter.start();
+        clock.advance(5, TimeUnit.SECONDS);
+        assertEquals(Long.MAX_VALUE, rateLimiter.currentThreshold());
+        rateLimiter.stop();
+    }
 }
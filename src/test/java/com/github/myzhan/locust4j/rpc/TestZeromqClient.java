@@ -1,5 +1,6 @@
 package com.github.myzhan.locust4j.rpc;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ThreadLocalRandom;
@@ -39,4 +40,56 @@ public class TestZeromqClient {
         server.stop();
         client.close();
     }
+
+    @Test
+    public void TestSendFromManyThreads() throws Exception {
+        // randomized the port to avoid conflicts
+        int masterPort = ThreadLocalRandom.current().nextInt(1000) + 2048;
+
+        TestServer server = new TestServer("127.0.0.1", masterPort);
+        server.start();
+
+        final Client client = new ZeromqClient("127.0.0.1", masterPort, "testClient");
+        final int threads = 4;
+        final int messages = 100;
+        Thread[] senders = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final String type = "test" + i;
+            senders[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < messages; j++) {
+                        Map<String, Object> data = new HashMap<>();
+                        data.put("index", j);
+                        try {
+                            client.send(new Message(type, data, -1, "node"));
+                        } catch (IOException ex) {
+                            throw new RuntimeException(ex);
+                        }
+                    }
+                }
+            });
+            senders[i].start();
+        }
+
+        // messages of every thread are received in the order they are sent
+        int[] next = new int[threads];
+        for (int i = 0; i < threads * messages; i++) {
+            Message message = client.recv();
+            int sender = Integer.parseInt(message.getType().substring(4));
+            assertEquals(next[sender]++, message.getField("index"));
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+
+        client.close();
+        try {
+            client.recv();
+            fail("recv() should fail after close()");
+        } catch (IOException ex) {
+            // expected
+        }
+        server.stop();
+    }
 }
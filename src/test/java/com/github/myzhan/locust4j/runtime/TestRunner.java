@@ -1,8 +1,11 @@
 package com.github.myzhan.locust4j.runtime;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -16,6 +19,8 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InOrder;
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
 import org.mockito.Mockito;
 import static org.mockito.Mockito.*;
 import org.slf4j.Logger;
@@ -24,6 +29,7 @@ import org.slf4j.LoggerFactory;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author myzhan
@@ -102,6 +108,25 @@ public class TestRunner {
         runner.quit();
     }
 
+    @Test
+    public void TestSumLargeUsersAmount() throws Exception {
+        MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+        packer.packArrayHeader(3);
+        packer.packString("spawn");
+        packer.packMapHeader(1);
+        // 70000 is packed as uint32 and decoded as a Long
+        packer.packString("user_classes_count").packMapHeader(2);
+        packer.packString("UserA").packInt(70000);
+        packer.packString("UserB").packInt(10);
+        packer.packString("master");
+        packer.close();
+
+        Message message = new Message(packer.toByteArray());
+        assertEquals(70010, runner.sumUsersAmount(message));
+        assertEquals(70000, (int) runner.userClassesCountFromMaster.get("UserA"));
+        assertEquals(10, (int) runner.userClassesCountFromMaster.get("UserB"));
+    }
+
     @Test
     public void TestOnMessage() throws Exception {
         runner.setHeartbeatStopped(true);
@@ -154,6 +179,63 @@ public class TestRunner {
         runner.quit();
     }
 
+    @Test
+    public void TestCustomMessages() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch handled = new CountDownLatch(1);
+        final BlockingQueue<String> handlerThreads = new LinkedBlockingQueue<>();
+        runner.registerMessageHandler("test_data", new MessageHandler() {
+            @Override
+            public void onMessage(Message message) throws Exception {
+                handlerThreads.add(Thread.currentThread().getName());
+                assertEquals("foo", message.getField("data"));
+                handled.countDown();
+                blocked.await();
+            }
+        });
+        runner.setHeartbeatStopped(true);
+        runner.getReady();
+
+        Map<String, Object> data = new HashMap<>(1);
+        data.put("data", "foo");
+        client.getFromServerQueue().offer(new Message("test_data", data, -1, null));
+        assertTrue(handled.await(1, TimeUnit.SECONDS));
+        assertEquals("locust4j-message-handler", handlerThreads.take());
+
+        // the blocked handler doesn't block other messages
+        client.getFromServerQueue().offer(new Message("heartbeat", null, -1, null));
+        for (int i = 0; i < 100 && !runner.isMasterHeartbeatTimeout(1); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(runner.isMasterHeartbeatTimeout(1));
+        blocked.countDown();
+
+        runner.sendMessage("test_result", data);
+        Message sent = client.getToServerQueue().take();
+        assertEquals("test_result", sent.getType());
+        assertEquals(data, sent.getData());
+        assertEquals(runner.nodeID, sent.getNodeID());
+
+        // custom messages may carry data of any type
+        runner.sendMessage("test_result", Arrays.asList("foo", "bar"));
+        sent = new Message(client.getToServerQueue().take().getBytes());
+        assertEquals(Arrays.asList("foo", "bar"), sent.getPayload());
+        runner.sendMessage("test_result", "foo");
+        sent = new Message(client.getToServerQueue().take().getBytes());
+        assertEquals("foo", sent.getPayload());
+
+        runner.quit();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void TestRegisterHandlerOfLocustMessage() {
+        runner.registerMessageHandler("spawn", new MessageHandler() {
+            @Override
+            public void onMessage(Message message) {
+            }
+        });
+    }
+
     @Test
     public void TestSendHeartbeat() throws Exception {
         runner.getReady();
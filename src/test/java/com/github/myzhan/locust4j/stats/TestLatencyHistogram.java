@@ -0,0 +1,80 @@
+package com.github.myzhan.locust4j.stats;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author myzhan
+ */
+public class TestLatencyHistogram {
+
+    @Test
+    public void TestPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram(3);
+        for (long i = 1; i <= 100000; i++) {
+            histogram.recordValue(i);
+        }
+
+        assertEquals(100000, histogram.getTotalCount());
+        assertEquals(1, histogram.getMinValue());
+        assertEquals(100000, histogram.getMaxValue());
+        assertEquals(50000.5, histogram.getMean(), 0.001);
+        assertWithinPrecision(50000, histogram.getValueAtPercentile(50), 3);
+        assertWithinPrecision(99900, histogram.getValueAtPercentile(99.9), 3);
+        assertWithinPrecision(99990, histogram.getValueAtPercentile(99.99), 3);
+        assertEquals(100000, histogram.getValueAtPercentile(100));
+        assertEquals(1, histogram.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void TestSingleUnitResolution() {
+        LatencyHistogram histogram = new LatencyHistogram(2);
+        for (long i = 0; i < 200; i++) {
+            histogram.recordValue(i);
+        }
+        for (long i = 0; i < 200; i++) {
+            assertEquals(i, histogram.getValueAtPercentile((i + 1) * 100.0 / 200));
+        }
+    }
+
+    @Test
+    public void TestOutOfRange() {
+        LatencyHistogram histogram = new LatencyHistogram(1);
+        histogram.recordValue(-1);
+        histogram.recordValue(Long.MAX_VALUE);
+
+        assertEquals(0, histogram.getMinValue());
+        assertEquals(LatencyHistogram.HIGHEST_TRACKABLE_VALUE, histogram.getMaxValue());
+    }
+
+    @Test
+    public void TestMergeAndReset() {
+        LatencyHistogram histogram = new LatencyHistogram(3);
+        LatencyHistogram coarse = new LatencyHistogram(1);
+        histogram.recordValue(1000, 99);
+        coarse.recordValue(250000);
+
+        histogram.merge(coarse);
+        assertEquals(100, histogram.getTotalCount());
+        assertEquals(1000, histogram.getValueAtPercentile(99));
+        assertEquals(250000, histogram.getValueAtPercentile(100));
+
+        LatencyHistogram copy = histogram.copy();
+        histogram.reset();
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(100, copy.getTotalCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void TestInvalidPrecision() {
+        new LatencyHistogram(6);
+    }
+
+    private static void assertWithinPrecision(long expected, long actual, int significantDigits) {
+        double error = Math.abs(actual - expected) / (double)expected;
+        assertTrue(actual + " is not close to " + expected, error <= Math.pow(10, -significantDigits));
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.myzhan.locust4j.stats;
+
+import com.github.myzhan.locust4j.message.LongIntMap;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author myzhan
+ */
+public class TestPerSecondCounter {
+
+    @Test
+    public void TestAddAndCopy() {
+        PerSecondCounter counter = new PerSecondCounter();
+        long now = 1700000000L;
+        counter.add(now);
+        counter.add(now);
+        counter.add(now + 2);
+        // out of the window
+        counter.add(now + 100);
+        counter.add(now - 1);
+
+        LongIntMap map = counter.toLongIntMap();
+        assertEquals(4, counter.size());
+        assertEquals(4, map.size());
+        assertEquals(2, (int) map.get(now));
+        assertNull(map.get(now + 1));
+        assertEquals(1, (int) map.get(now + 2));
+        assertEquals(1, (int) map.get(now + 100));
+        assertEquals(1, (int) map.get(now - 1));
+    }
+
+    @Test
+    public void TestClearAndWrapAround() {
+        PerSecondCounter counter = new PerSecondCounter();
+        long now = 1700000000L;
+        for (int i = 0; i < 10; i++) {
+            counter.add(now + i);
+        }
+        counter.clear();
+        assertEquals(0, counter.size());
+
+        // the next window starts from a new base and reuses the slots
+        counter.add(now + 70);
+        counter.add(now + 71, 3);
+        LongIntMap map = counter.toLongIntMap();
+        assertEquals(2, map.size());
+        assertEquals(1, (int) map.get(now + 70));
+        assertEquals(3, (int) map.get(now + 71));
+    }
+
+    @Test
+    public void TestMerge() {
+        long now = 1700000000L;
+        PerSecondCounter counter = new PerSecondCounter();
+        counter.add(now);
+
+        PerSecondCounter other = new PerSecondCounter();
+        other.add(now);
+        other.add(now + 1);
+        other.add(now + 200);
+        counter.merge(other);
+
+        LongIntMap map = counter.toLongIntMap();
+        assertEquals(2, (int) map.get(now));
+        assertEquals(1, (int) map.get(now + 1));
+        assertEquals(1, (int) map.get(now + 200));
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.myzhan.locust4j.stats;
+
+import java.util.List;
+import java.util.Map;
+
+import com.github.myzhan.locust4j.utils.Utils;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author myzhan
+ */
+public class TestRequestTimer {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void TestSuccessAndFailure() throws Exception {
+        Stats stats = new Stats();
+        StatsHandle handle = stats.getHandle("rpc", "call");
+
+        try (RequestTimer timer = handle.startTimer()) {
+            timer.setContentLength(100);
+            Thread.sleep(5);
+        }
+        try (RequestTimer timer = handle.startTimer()) {
+            timer.fail("timeout");
+        }
+
+        Map<String, Object> report = stats.collectReportData();
+        List<Map<String, Object>> statsReport = (List<Map<String, Object>>) report.get("stats");
+        Map<String, Object> errorReport = (Map<String, Object>) report.get("errors");
+
+        assertEquals(2L, statsReport.get(0).get("num_requests"));
+        assertEquals(1L, statsReport.get(0).get("num_failures"));
+        assertEquals(100L, statsReport.get(0).get("total_content_length"));
+        assertTrue((Long) statsReport.get(0).get("max_response_time") >= 5);
+        Map<String, Object> error = (Map<String, Object>) errorReport.get(Utils.md5("rpc", "call", "timeout"));
+        assertEquals(1L, error.get("occurrences"));
+
+        // kept in micros without enabling the latency histograms
+        LatencyHistogram histogram = stats.getLatencyHistogram("rpc", "call");
+        assertEquals(2, histogram.getTotalCount());
+        assertTrue(histogram.getMaxValue() >= 5000);
+        assertEquals(2, stats.getTotalLatencyHistogram().getTotalCount());
+    }
+
+    @Test
+    public void TestNanosAreRounded() {
+        StatsEntry entry = new StatsEntry("call", "rpc");
+        entry.reset();
+        entry.logNanos(42400, 0);
+        entry.logNanos(147000, 0);
+        entry.logNanos(1600000, 0);
+
+        // rounded to millis for locust
+        assertEquals(2, (int) entry.getResponseTimes().get(0L));
+        assertEquals(1, (int) entry.getResponseTimes().get(2L));
+        assertEquals(2, entry.getTotalResponseTime());
+        // and kept in micros
+        assertEquals(StatsEntry.TIMER_HISTOGRAM_DIGITS, entry.getLatencyHistogram().getSignificantDigits());
+        assertEquals(3, entry.getLatencyHistogram().getTotalCount());
+        assertEquals(42, entry.getLatencyHistogram().getMinValue());
+        assertEquals(1600, entry.getLatencyHistogram().getMaxValue());
+    }
+
+    @Test
+    public void TestTimerIsReused() {
+        Stats stats = new Stats();
+        StatsHandle handle = stats.getHandle("rpc", "call");
+
+        RequestTimer outer = handle.startTimer();
+        RequestTimer inner = handle.startTimer();
+        assertTrue(outer != inner);
+        inner.close();
+        outer.close();
+        // closing twice records nothing
+        outer.close();
+
+        RequestTimer reused = handle.startTimer();
+        assertSame(outer, reused);
+        reused.close();
+    }
+}
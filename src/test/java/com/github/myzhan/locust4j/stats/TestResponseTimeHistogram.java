@@ -0,0 +1,71 @@
+package com.github.myzhan.locust4j.stats;
+
+import com.github.myzhan.locust4j.message.LongIntMap;
+import com.github.myzhan.locust4j.utils.Utils;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author myzhan
+ */
+public class TestResponseTimeHistogram {
+
+    private static long roundLikeLocust(long responseTime) {
+        if (responseTime < 100) {
+            return responseTime;
+        } else if (responseTime < 1000) {
+            return Utils.round(responseTime, -1);
+        } else if (responseTime < 10000) {
+            return Utils.round(responseTime, -2);
+        } else {
+            return Utils.round(responseTime, -3);
+        }
+    }
+
+    @Test
+    public void TestRoundIsCompatible() {
+        for (long responseTime = 0; responseTime < 200000; responseTime++) {
+            assertEquals(roundLikeLocust(responseTime), ResponseTimeHistogram.round(responseTime));
+        }
+    }
+
+    @Test
+    public void TestSerializeToSameMap() {
+        ResponseTimeHistogram histogram = new ResponseTimeHistogram();
+        LongIntMap expected = new LongIntMap();
+        for (long responseTime = -5; responseTime < 100000; responseTime += 7) {
+            histogram.add(responseTime);
+            expected.add(roundLikeLocust(responseTime));
+        }
+
+        LongIntMap actual = histogram.toLongIntMap();
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.size(), histogram.size());
+        for (long responseTime = -5; responseTime < 100000; responseTime++) {
+            assertEquals(expected.get(responseTime), actual.get(responseTime));
+        }
+    }
+
+    @Test
+    public void TestMergeAndClear() {
+        ResponseTimeHistogram histogram = new ResponseTimeHistogram();
+        histogram.add(147);
+        histogram.add(120000);
+
+        ResponseTimeHistogram other = new ResponseTimeHistogram();
+        other.add(150);
+        other.add(119800);
+        histogram.merge(other);
+
+        LongIntMap map = histogram.toLongIntMap();
+        assertEquals(2, map.size());
+        assertEquals(2, (int) map.get(150L));
+        assertEquals(2, (int) map.get(120000L));
+
+        histogram.clear();
+        assertEquals(0, histogram.size());
+        assertNull(histogram.toLongIntMap().get(150L));
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.myzhan.locust4j.stats;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author myzhan
+ */
+public class TestSampleRingBuffer {
+
+    private static class CollectingHandler implements SampleRingBuffer.SampleHandler {
+        private final List<Long> responseTimes = new ArrayList<>();
+        private final List<String> errors = new ArrayList<>();
+
+        @Override
+        public void onSample(StatsHandle handle, long responseTime, long contentLength, String error) {
+            responseTimes.add(responseTime);
+            errors.add(error);
+        }
+    }
+
+    @Test
+    public void TestCapacityIsPowerOfTwo() {
+        assertEquals(1, new SampleRingBuffer(1).capacity());
+        assertEquals(8, new SampleRingBuffer(5).capacity());
+        assertEquals(16, new SampleRingBuffer(16).capacity());
+    }
+
+    @Test
+    public void TestOfferAndDrain() {
+        StatsHandle handle = new Stats().getHandle("http", "test");
+        SampleRingBuffer buffer = new SampleRingBuffer(4);
+        assertTrue(buffer.isEmpty());
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(handle, i, 10, i % 2 == 0 ? null : "error"));
+        }
+        assertFalse(buffer.offer(handle, 4, 10, null));
+        assertEquals(4, buffer.size());
+
+        CollectingHandler handler = new CollectingHandler();
+        assertEquals(3, buffer.drain(handler, 3));
+        assertEquals(1, buffer.size());
+
+        // freed slots are reused in the next lap
+        assertTrue(buffer.offer(handle, 4, 10, null));
+        assertEquals(2, buffer.drain(handler, 10));
+        assertTrue(buffer.isEmpty());
+
+        assertEquals(5, handler.responseTimes.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, (long) handler.responseTimes.get(i));
+        }
+        assertNull(handler.errors.get(0));
+        assertEquals("error", handler.errors.get(1));
+    }
+
+    @Test
+    public void TestMultipleProducers() throws Exception {
+        final StatsHandle handle = new Stats().getHandle("http", "test");
+        final SampleRingBuffer buffer = new SampleRingBuffer(1024);
+        final int recordsPerThread = 10000;
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < recordsPerThread; j++) {
+                        while (!buffer.offer(handle, 1, 1, null)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            });
+            threads[i].start();
+        }
+
+        CollectingHandler handler = new CollectingHandler();
+        int drained = 0;
+        while (drained < threads.length * recordsPerThread) {
+            drained += buffer.drain(handler, 100);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(threads.length * recordsPerThread, handler.responseTimes.size());
+        assertTrue(buffer.isEmpty());
+    }
+}
@@ -1,17 +1,33 @@
 package com.github.myzhan.locust4j.stats;
 
+import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import com.github.myzhan.locust4j.message.LongIntMap;
+import com.github.myzhan.locust4j.message.Message;
 import com.github.myzhan.locust4j.stats.RequestFailure;
 import com.github.myzhan.locust4j.stats.RequestSuccess;
 import com.github.myzhan.locust4j.stats.Stats;
 import com.github.myzhan.locust4j.stats.StatsEntry;
+import com.github.myzhan.locust4j.utils.Clock;
 import com.github.myzhan.locust4j.utils.Utils;
+import com.github.myzhan.locust4j.utils.VirtualClock;
 import org.junit.Before;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePacker;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.value.Value;
+import org.msgpack.value.ValueFactory;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -210,4 +226,647 @@ public class TestStats {
         assertEquals(0L, statsTotalReport.get("num_failures"));
         assertEquals(0, errorReport.size());
     }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void TestStripedRecording() throws Exception {
+        final Stats stripedStats = new Stats();
+        stripedStats.setStriped(true);
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 100; j++) {
+                        stripedStats.logRequestStriped("http", "test", 10, 100);
+                    }
+                    stripedStats.logFailureStriped("http", "test", 20, "Test Error");
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Map<String, Object> report = stripedStats.collectReportData();
+        List<Map<String, Object>> statsReport = (List<Map<String, Object>>) report.get("stats");
+        Map<String, Object> statsTotalReport = (Map<String, Object>) report.get("stats_total");
+        Map<String, Object> errorReport = (Map<String, Object>) report.get("errors");
+
+        assertEquals(1, statsReport.size());
+        assertEquals(404L, statsReport.get(0).get("num_requests"));
+        assertEquals(4L, statsReport.get(0).get("num_failures"));
+        assertEquals(40000L, statsReport.get(0).get("total_content_length"));
+        assertEquals(10L, statsReport.get(0).get("min_response_time"));
+        assertEquals(20L, statsReport.get(0).get("max_response_time"));
+        assertEquals(404L, statsTotalReport.get("num_requests"));
+        assertEquals(4L, statsTotalReport.get("num_failures"));
+
+        Map<String, Object> httpError = (Map<String, Object>) errorReport.get(Utils.md5("http", "test", "Test Error"));
+        assertEquals(4L, httpError.get("occurrences"));
+
+        // shards of the finished threads are dropped once they are drained
+        report = stripedStats.collectReportData();
+        assertEquals(0, ((List<Map<String, Object>>) report.get("stats")).size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void TestStatsHandle() {
+        Stats handleStats = new Stats();
+        StatsHandle handle = handleStats.getHandle("http", "test");
+
+        assertTrue(handle == handleStats.getHandle("http", "test"));
+        assertTrue(handle != handleStats.getHandle("http", "test2"));
+        assertTrue(handle != handleStats.getHandle("udp", "test"));
+        assertEquals("http", handle.getMethod());
+        assertEquals("test", handle.getName());
+
+        handle.success(10, 100);
+        handle.success(30, 100);
+        handle.failure(20, "Test Error");
+
+        Map<String, Object> report = handleStats.collectReportData();
+        List<Map<String, Object>> statsReport = (List<Map<String, Object>>) report.get("stats");
+        Map<String, Object> errorReport = (Map<String, Object>) report.get("errors");
+
+        assertEquals(1, statsReport.size());
+        assertEquals("test", statsReport.get(0).get("name"));
+        assertEquals("http", statsReport.get(0).get("method"));
+        assertEquals(3L, statsReport.get(0).get("num_requests"));
+        assertEquals(1L, statsReport.get(0).get("num_failures"));
+        assertEquals(200L, statsReport.get(0).get("total_content_length"));
+        Map<String, Object> httpError = (Map<String, Object>) errorReport.get(Utils.md5("http", "test", "Test Error"));
+        assertEquals(1L, httpError.get("occurrences"));
+
+        // the shard is reused after the report
+        handle.failure(20, "Test Error");
+        report = handleStats.collectReportData();
+        statsReport = (List<Map<String, Object>>) report.get("stats");
+        errorReport = (Map<String, Object>) report.get("errors");
+        assertEquals(1L, statsReport.get(0).get("num_requests"));
+        httpError = (Map<String, Object>) errorReport.get(Utils.md5("http", "test", "Test Error"));
+        assertEquals(1L, httpError.get("occurrences"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void TestOverflowPolicy() {
+        Stats boundedStats = new Stats();
+        boundedStats.setSampleBufferSize(2);
+        StatsHandle handle = boundedStats.getHandle("http", "test");
+
+        boundedStats.setOverflowPolicy(OverflowPolicy.DROP);
+        for (int i = 0; i < 5; i++) {
+            boundedStats.record(handle, 10, 100, null);
+        }
+        boundedStats.getSampleBuffer().drain(new SampleRingBuffer.SampleHandler() {
+            @Override
+            public void onSample(StatsHandle handle, long responseTime, long contentLength, String error) {
+            }
+        }, Integer.MAX_VALUE);
+
+        boundedStats.setOverflowPolicy(OverflowPolicy.AGGREGATE);
+        for (int i = 0; i < 5; i++) {
+            boundedStats.record(handle, 10, 100, null);
+        }
+
+        Map<String, Object> report = boundedStats.collectReportData();
+        assertEquals(6L, report.get("overflowed_samples"));
+        assertEquals(3L, report.get("dropped_samples"));
+        // records in the buffer haven't been drained by the stats thread, only the aggregated ones are reported
+        List<Map<String, Object>> statsReport = (List<Map<String, Object>>) report.get("stats");
+        assertEquals(3L, statsReport.get(0).get("num_requests"));
+
+        report = boundedStats.collectReportData();
+        assertEquals(0L, report.get("overflowed_samples"));
+        assertEquals(0L, report.get("dropped_samples"));
+    }
+
+    @Test(timeout = 5000)
+    public void TestFailedReportRecyclesBuffer() throws Exception {
+        final AtomicBoolean failing = new AtomicBoolean(true);
+        Stats failingStats = new Stats() {
+            @Override
+            StatsEntry newEntry(String name, String method) {
+                StatsEntry entry = new StatsEntry(name, method) {
+                    @Override
+                    public void packTo(MessagePacker packer) throws IOException {
+                        if (failing.getAndSet(false)) {
+                            throw new IllegalStateException("failed to pack");
+                        }
+                        super.packTo(packer);
+                    }
+                };
+                entry.reset();
+                return entry;
+            }
+        };
+        failingStats.logRequest("http", "test", 10, 0);
+        failingStats.logRequest("http", "test", 10, 0);
+        try {
+            failingStats.collectPackedReportData();
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+
+        // the buffers are recycled, without the counts of the failed report
+        for (int i = 0; i < 3; i++) {
+            failingStats.logRequest("http", "test", 10, 0);
+            Map<Value, Value> total = packAndUnpack(failingStats.collectPackedReportData()).asMapValue().map()
+                .get(ValueFactory.newString("stats_total")).asMapValue().map();
+            assertEquals(1L, total.get(ValueFactory.newString("num_requests")).asIntegerValue().toLong());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void TestReportIntervalWithVirtualClock() throws Exception {
+        Clock previous = Utils.getClock();
+        VirtualClock clock = new VirtualClock(Utils.now());
+        Utils.setClock(clock);
+        Stats timedStats = new Stats();
+        try {
+            timedStats.start();
+            timedStats.logRequestStriped("http", "test", 10, 100);
+
+            Thread.sleep(100);
+            assertNull(timedStats.getMessageToRunnerQueue().poll());
+
+            clock.advance(3000, TimeUnit.MILLISECONDS);
+            Map<String, Object> data = timedStats.getMessageToRunnerQueue().poll(1, TimeUnit.SECONDS);
+            assertNotNull(data);
+            // the stats are packed when they are sent to the master
+            Map<Value, Value> total = packAndUnpack(data).asMapValue().map()
+                .get(ValueFactory.newString("stats_total")).asMapValue().map();
+            assertEquals(1L, total.get(ValueFactory.newString("num_requests")).asIntegerValue().toLong());
+        } finally {
+            timedStats.stop();
+            Utils.setClock(previous);
+        }
+    }
+
+    @Test
+    public void TestLatencyHistogram() {
+        Stats histogramStats = new Stats();
+        assertNull(histogramStats.getTotalLatencyHistogram());
+        histogramStats.setLatencyHistogramDigits(3);
+
+        StatsHandle handle = histogramStats.getHandle("http", "test");
+        for (int i = 1; i <= 1000; i++) {
+            handle.success(i, 0);
+        }
+        histogramStats.logRequest("http", "test", 5000, 0);
+        histogramStats.collectReportData();
+
+        LatencyHistogram histogram = histogramStats.getLatencyHistogram("http", "test");
+        assertEquals(1001, histogram.getTotalCount());
+        assertTrue(Math.abs(histogram.getValueAtPercentile(99.9) - 1000000) <= 1000);
+        assertEquals(5000000, histogram.getMaxValue());
+        assertEquals(1001, histogramStats.getTotalLatencyHistogram().getTotalCount());
+
+        // kept across reports, until the stats are cleared
+        handle.success(10, 0);
+        histogramStats.collectReportData();
+        assertEquals(1002, histogramStats.getLatencyHistogram("http", "test").getTotalCount());
+        assertTrue(histogramStats.getLatencyReport().contains("Aggregated"));
+
+        histogramStats.clearAll();
+        assertNull(histogramStats.getLatencyHistogram("http", "test"));
+        assertEquals(0, histogramStats.getTotalLatencyHistogram().getTotalCount());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void TestErrorNormalizerAndLimit() {
+        Stats errorStats = new Stats();
+        errorStats.setErrorNormalizer(ErrorNormalizer.MASK_IDS);
+        errorStats.setMaxErrors(2);
+        StatsHandle handle = errorStats.getHandle("http", "test");
+
+        for (int i = 0; i < 10; i++) {
+            errorStats.logError("http", "test", "timeout after " + i + "ms");
+            handle.failure(1, "timeout after " + i + "ms");
+        }
+        errorStats.logError("http", "test", "connection refused");
+        errorStats.logError("http", "test", "connection reset");
+        handle.failure(1, "connection refused");
+        handle.failure(1, "connection reset");
+
+        Map<String, Object> report = errorStats.collectReportData();
+        Map<String, Object> errorReport = (Map<String, Object>) report.get("errors");
+        assertEquals(3, errorReport.size());
+        Map<String, Object> timeout = (Map<String, Object>) errorReport.get(
+            Utils.md5("http", "test", "timeout after {n}ms"));
+        assertEquals(20L, timeout.get("occurrences"));
+        Map<String, Object> refused = (Map<String, Object>) errorReport.get(
+            Utils.md5("http", "test", "connection refused"));
+        assertEquals(2L, refused.get("occurrences"));
+        Map<String, Object> others = (Map<String, Object>) errorReport.get(
+            Utils.md5("http", "test", StatsError.OTHER_ERRORS));
+        assertEquals(2L, others.get("occurrences"));
+
+        // the limit applies to every report
+        errorStats.logError("http", "test", "connection reset");
+        report = errorStats.collectReportData();
+        errorReport = (Map<String, Object>) report.get("errors");
+        assertEquals(1, errorReport.size());
+        assertNotNull(errorReport.get(Utils.md5("http", "test", "connection reset")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void TestNullError() throws Exception {
+        Stats errorStats = new Stats();
+        errorStats.setErrorNormalizer(ErrorNormalizer.MASK_IDS);
+        StatsHandle handle = errorStats.getHandle("http", "test");
+        errorStats.logError("http", "test", null);
+        handle.failure(1, (String) null);
+
+        Map<String, Object> report = errorStats.collectReportData();
+        Map<String, Object> errorReport = (Map<String, Object>) report.get("errors");
+        Map<String, Object> error = (Map<String, Object>) errorReport.get(Utils.md5("http", "test", "null"));
+        assertEquals(2L, error.get("occurrences"));
+
+        // the packed report too
+        handle.failure(1, (String) null);
+        Map<Value, Value> packed = packAndUnpack(errorStats.collectPackedReportData()).asMapValue().map()
+            .get(ValueFactory.newString("errors")).asMapValue().map();
+        assertEquals(1, packed.size());
+    }
+
+    @Test
+    public void TestMaskIds() {
+        assertEquals("order {uuid} failed with code {n}", ErrorNormalizer.MASK_IDS.normalize(
+            "order 123e4567-e89b-12d3-a456-426614174000 failed with code 500"));
+        assertEquals("trace {hex} at {n}", ErrorNormalizer.MASK_IDS.normalize("trace 4bf92f3577b34da6 at 1700000000"));
+        assertEquals("no ids here", ErrorNormalizer.MASK_IDS.normalize("no ids here"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void TestNameNormalizerAndMaxEntries() {
+        Stats entryStats = new Stats();
+        entryStats.setNameNormalizer(NameNormalizer.URL_TEMPLATE);
+        entryStats.setMaxEntries(2);
+
+        entryStats.logRequest("GET", "/user/1?verbose=true", 10, 0);
+        entryStats.logRequest("GET", "/user/2", 10, 0);
+        entryStats.logRequest("GET", "/order/123e4567-e89b-12d3-a456-426614174000/items", 10, 0);
+        entryStats.logRequest("GET", "/product/3", 10, 0);
+        entryStats.logRequest("GET", "/cart/4", 10, 0);
+
+        assertTrue(entryStats.getHandle("GET", "/user/3") == entryStats.getHandle("GET", "/user/{id}"));
+        // more names than the cache holds are still normalized
+        for (int i = 0; i < 5000; i++) {
+            assertSame(entryStats.getHandle("GET", "/user/{id}"), entryStats.getHandle("GET", "/user/" + i));
+        }
+        Map<String, Object> report = entryStats.collectReportData();
+        List<Map<String, Object>> statsReport = (List<Map<String, Object>>) report.get("stats");
+        assertEquals(3, statsReport.size());
+        Map<String, Long> numRequests = new HashMap<>();
+        for (Map<String, Object> entry : statsReport) {
+            numRequests.put((String) entry.get("name"), (Long) entry.get("num_requests"));
+        }
+        assertEquals(2L, (long) numRequests.get("/user/{id}"));
+        assertEquals(1L, (long) numRequests.get("/order/{id}/items"));
+        assertEquals(2L, (long) numRequests.get(StatsEntry.OTHER_NAMES));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void TestEvictIdleEntries() {
+        Stats entryStats = new Stats();
+        entryStats.setEvictIdleReports(2);
+        StatsHandle idle = entryStats.getHandle("http", "idle");
+        StatsHandle busy = entryStats.getHandle("http", "busy");
+
+        idle.success(10, 0);
+        busy.success(10, 0);
+        entryStats.collectReportData();
+        // idle for 2 reports, then evicted when the buffers are swapped for the next report
+        for (int i = 0; i < 3; i++) {
+            busy.success(10, 0);
+            entryStats.collectReportData();
+        }
+        assertTrue(idle.evicted);
+        assertTrue(!busy.evicted);
+        StatsHandle replacement = entryStats.getHandle("http", "idle");
+        assertTrue(idle != replacement);
+        // the replacement is resolved once
+        assertSame(replacement, idle.current());
+        assertSame(replacement, idle.current());
+
+        // the id of the evicted handle is reused after the next report
+        busy.success(10, 0);
+        entryStats.collectReportData();
+        StatsHandle reused = entryStats.getHandle("http", "reused");
+        assertEquals(idle.id, reused.id);
+
+        // records of the old handle go to its replacement
+        idle.success(10, 0);
+        reused.success(20, 0);
+        Map<String, Object> report = entryStats.collectReportData();
+        List<Map<String, Object>> statsReport = (List<Map<String, Object>>) report.get("stats");
+        assertEquals(2, statsReport.size());
+        for (Map<String, Object> entry : statsReport) {
+            assertEquals(1L, entry.get("num_requests"));
+        }
+    }
+
+    @Test
+    public void TestLatencyHistogramKeptAfterEviction() {
+        Stats entryStats = new Stats();
+        entryStats.setLatencyHistogramDigits(2);
+        entryStats.setEvictIdleReports(1);
+        StatsHandle idle = entryStats.getHandle("http", "idle");
+        StatsHandle busy = entryStats.getHandle("http", "busy");
+
+        idle.success(10, 0);
+        busy.success(10, 0);
+        entryStats.collectReportData();
+        for (int i = 0; i < 3; i++) {
+            busy.success(10, 0);
+            entryStats.collectReportData();
+        }
+        assertTrue(idle.evicted);
+        assertEquals(1, entryStats.getLatencyHistogram("http", "idle").getTotalCount());
+        assertTrue(entryStats.getLatencyReport().contains("idle"));
+
+        // records of the replacement are added to the same histogram
+        idle.success(10, 0);
+        entryStats.collectReportData();
+        assertEquals(2, entryStats.getLatencyHistogram("http", "idle").getTotalCount());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void TestSwapBuffers() {
+        Stats bufferedStats = new Stats();
+        bufferedStats.logRequest("http", "test", 10, 0);
+        bufferedStats.logError("http", "test", "Test Error");
+
+        // every report retires the active buffer, which is recycled after it's serialized
+        for (int i = 0; i < 4; i++) {
+            Map<String, Object> report = bufferedStats.collectReportData();
+            List<Map<String, Object>> statsReport = (List<Map<String, Object>>) report.get("stats");
+            Map<String, Object> errorReport = (Map<String, Object>) report.get("errors");
+            assertEquals(1, statsReport.size());
+            assertEquals(i + 1L, statsReport.get(0).get("num_requests"));
+            assertEquals(i == 0 ? 1 : 0, errorReport.size());
+            assertEquals(0, bufferedStats.get("test", "http").getNumRequests());
+
+            for (int j = 0; j < i + 2; j++) {
+                bufferedStats.logRequest("http", "test", 10, 0);
+            }
+        }
+    }
+
+    @Test
+    public void TestAdaptiveReportInterval() {
+        Stats timedStats = new Stats();
+        timedStats.setReportInterval(2000);
+        assertEquals(2000, timedStats.nextReportInterval());
+
+        timedStats.setAdaptiveReportInterval(true);
+        assertEquals(2000, timedStats.nextReportInterval());
+
+        for (int i = 0; i < 1000; i++) {
+            timedStats.logRequest("http", "test" + i, 10, 0);
+        }
+        timedStats.collectReportData();
+        assertEquals(6000, timedStats.nextReportInterval());
+
+        for (int i = 0; i < 5000; i++) {
+            timedStats.logRequest("http", "test" + i, 10, 0);
+        }
+        timedStats.collectReportData();
+        assertEquals(10000, timedStats.nextReportInterval());
+
+        // shortened until the next report
+        timedStats.setSpawning(true);
+        assertEquals(1000, timedStats.nextReportInterval());
+        timedStats.collectReportData();
+        assertEquals(2000, timedStats.nextReportInterval());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void TestTotalMergedAtReportTime() {
+        Stats totalStats = new Stats();
+        totalStats.logRequest("http", "fast", 5, 10);
+        totalStats.logRequest("http", "slow", 250, 20);
+        totalStats.logRequest("udp", "fast", 7, 30);
+        totalStats.logError("udp", "fast", "Test Error");
+
+        Map<String, Object> report = totalStats.collectReportData();
+        Map<String, Object> total = (Map<String, Object>) report.get("stats_total");
+        assertEquals("Total", total.get("name"));
+        assertEquals(3L, total.get("num_requests"));
+        assertEquals(1L, total.get("num_failures"));
+        assertEquals(262L, total.get("total_response_time"));
+        assertEquals(5L, total.get("min_response_time"));
+        assertEquals(250L, total.get("max_response_time"));
+        assertEquals(60L, total.get("total_content_length"));
+        LongIntMap responseTimes = (LongIntMap) total.get("response_times");
+        assertEquals(1, (int) responseTimes.get(5L));
+        assertEquals(1, (int) responseTimes.get(7L));
+        assertEquals(1, (int) responseTimes.get(250L));
+
+        report = totalStats.collectReportData();
+        total = (Map<String, Object>) report.get("stats_total");
+        assertEquals(0L, total.get("num_requests"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void TestSampling() {
+        Stats sampledStats = new Stats();
+        sampledStats.setSampleRate(10);
+        StatsHandle handle = sampledStats.getHandle("http", "test");
+        for (int i = 0; i < 1000; i++) {
+            handle.success(10, 100);
+        }
+        for (int i = 0; i < 5; i++) {
+            handle.failure(20, "Test Error");
+        }
+
+        Map<String, Object> report = sampledStats.collectReportData();
+        List<Map<String, Object>> entries = (List<Map<String, Object>>) report.get("stats");
+        Map<String, Object> entry = entries.get(0);
+        assertEquals(1005L, entry.get("num_requests"));
+        assertEquals(5L, entry.get("num_failures"));
+        assertEquals(10100L, entry.get("total_response_time"));
+        assertEquals(100000L, entry.get("total_content_length"));
+        assertEquals(1000, (int) ((LongIntMap) entry.get("response_times")).get(10L));
+        assertEquals(5, (int) ((LongIntMap) entry.get("response_times")).get(20L));
+        final int[] rps = new int[1];
+        ((LongIntMap) entry.get("num_reqs_per_sec")).forEach(new LongIntMap.EntryConsumer() {
+            @Override
+            public void accept(long key, int value) {
+                rps[0] += value;
+            }
+        });
+        assertEquals(1005, rps[0]);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void TestSamplingInterleavedHandles() {
+        Stats sampledStats = new Stats();
+        sampledStats.setSampleRate(2);
+        StatsHandle get = sampledStats.getHandle("http", "get");
+        StatsHandle login = sampledStats.getHandle("http", "login");
+        for (int i = 0; i < 1000; i++) {
+            get.success(10, 0);
+            login.success(20, 0);
+        }
+
+        Map<String, Object> report = sampledStats.collectReportData();
+        List<Map<String, Object>> entries = (List<Map<String, Object>>) report.get("stats");
+        assertEquals(2, entries.size());
+        Map<String, Long> numRequests = new HashMap<>();
+        for (Map<String, Object> entry : entries) {
+            numRequests.put((String) entry.get("name"), (Long) entry.get("num_requests"));
+        }
+        assertEquals(1000L, (long) numRequests.get("get"));
+        assertEquals(1000L, (long) numRequests.get("login"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void TestSamplingLowRateHandle() {
+        Stats sampledStats = new Stats();
+        sampledStats.setSampleRate(10);
+        StatsHandle hot = sampledStats.getHandle("http", "hot");
+        StatsHandle cold = sampledStats.getHandle("http", "cold");
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 1000; i++) {
+                hot.success(10, 0);
+            }
+            for (int i = 0; i < 3; i++) {
+                cold.success(10, 0);
+            }
+
+            // the cold handle never reaches the sample rate, its records are counted in every report anyway
+            Map<String, Object> report = sampledStats.collectReportData();
+            Map<String, Long> numRequests = new HashMap<>();
+            for (Map<String, Object> entry : (List<Map<String, Object>>) report.get("stats")) {
+                numRequests.put((String) entry.get("name"), (Long) entry.get("num_requests"));
+            }
+            assertEquals(1000L, (long) numRequests.get("hot"));
+            assertEquals(3L, (long) numRequests.get("cold"));
+            Map<String, Object> total = (Map<String, Object>) report.get("stats_total");
+            assertEquals(1003L, total.get("num_requests"));
+        }
+    }
+
+    @Test
+    public void TestSampleBudget() throws Exception {
+        Stats sampledStats = new Stats();
+        sampledStats.setSampleBudget(100);
+        StatsHandle handle = sampledStats.getHandle("http", "test");
+        Thread.sleep(10);
+        for (int i = 0; i < 10000; i++) {
+            handle.success(10, 100);
+        }
+        sampledStats.collectReportData();
+        assertTrue(sampledStats.getSampleRate() > 1);
+
+        sampledStats.setSampleBudget(0);
+        sampledStats.setSampleRate(1);
+        sampledStats.collectReportData();
+        assertEquals(1, sampledStats.getSampleRate());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void TestThrowableFailures() {
+        Stats throwableStats = new Stats();
+        throwableStats.setErrorNormalizer(ErrorNormalizer.MASK_IDS);
+        throwableStats.setErrorsWithClassName(true);
+        StatsHandle handle = throwableStats.getHandle("http", "test");
+        for (int i = 0; i < 100; i++) {
+            handle.failure(10, new IllegalStateException("connection reset"));
+            handle.failure(10, new IllegalArgumentException("bad id " + i));
+        }
+        throwableStats.logFailureStriped("http", "test", 10, new NullPointerException());
+
+        Map<String, Object> report = throwableStats.collectReportData();
+        List<Map<String, Object>> entries = (List<Map<String, Object>>) report.get("stats");
+        assertEquals(201L, entries.get(0).get("num_failures"));
+        Map<String, Object> errors = (Map<String, Object>) report.get("errors");
+        Map<String, Long> occurrences = new HashMap<>();
+        for (Object error : errors.values()) {
+            Map<String, Object> m = (Map<String, Object>) error;
+            occurrences.put((String) m.get("error"), (Long) m.get("occurrences"));
+        }
+        assertEquals(100L, (long) occurrences.get("java.lang.IllegalStateException: connection reset"));
+        // the messages beyond the limit of distinct messages are built, and counted under the same key
+        assertEquals(100L, (long) occurrences.get("java.lang.IllegalArgumentException: bad id {n}"));
+        assertEquals(1L, (long) occurrences.get("java.lang.NullPointerException"));
+        assertEquals(3, occurrences.size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void TestThrowableFailuresWithoutClassName() {
+        Stats throwableStats = new Stats();
+        StatsHandle handle = throwableStats.getHandle("http", "test");
+        handle.failure(10, new IllegalStateException("connection reset"));
+        handle.failure(10, new NullPointerException());
+
+        // reported like the messages of task exceptions always were
+        Map<String, Object> errors = (Map<String, Object>) throwableStats.collectReportData().get("errors");
+        assertEquals(2, errors.size());
+        assertNotNull(errors.get(Utils.md5("http", "test", "connection reset")));
+        assertNotNull(errors.get(Utils.md5("http", "test", "null")));
+    }
+
+    private static Value packAndUnpack(Map<String, Object> data) throws Exception {
+        data.remove("overflowed_samples");
+        data.remove("dropped_samples");
+        return unpack(pack(data));
+    }
+
+    private static Value unpack(byte[] bytes) throws Exception {
+        MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(bytes);
+        // a message is an array of the type, the data and the node id
+        return unpacker.unpackValue().asArrayValue().get(1);
+    }
+
+    private static byte[] pack(Map<String, Object> data) throws Exception {
+        return new Message("stats", data, -1, "node").getBytes();
+    }
+
+    @Test
+    public void TestPackedReport() throws Exception {
+        Clock previous = Utils.getClock();
+        Utils.setClock(new VirtualClock(Utils.now()));
+        try {
+            Stats mapStats = new Stats();
+            Stats packedStats = new Stats();
+            for (Stats s : new Stats[] {mapStats, packedStats}) {
+                s.logRequest("http", "fast", 5, 10);
+                s.logRequest("http", "slow", 250, 20);
+                s.logRequest("http", "slow", 70000, 20);
+                s.logError("udp", "fast", "Test Error");
+                s.logError("udp", "slow", "Test Error");
+            }
+
+            // the same maps, the order of their keys may differ
+            byte[] packed = pack(packedStats.collectPackedReportData());
+            byte[] serialized = pack(mapStats.collectReportData());
+            assertEquals(unpack(serialized), unpack(packed));
+
+            // entries are reset in place
+            packed = pack(packedStats.collectPackedReportData());
+            serialized = pack(mapStats.collectReportData());
+            assertEquals(unpack(serialized), unpack(packed));
+        } finally {
+            Utils.setClock(previous);
+        }
+    }
 }
@@ -59,4 +59,29 @@ public class TestStatsEntry {
         assertEquals(0, entry.getNumFailures());
 
     }
+
+    @Test
+    public void TestMerge() {
+        StatsEntry entry = new StatsEntry("http", "success");
+        entry.reset();
+        entry.log(10, 100);
+        entry.log(30, 100);
+
+        StatsEntry other = new StatsEntry("http", "success");
+        other.reset();
+        other.log(5, 50);
+        other.log(10, 50);
+        other.logError("400 ERROR");
+
+        entry.merge(other);
+
+        assertEquals(4, entry.getNumRequests());
+        assertEquals(1, entry.getNumFailures());
+        assertEquals(55, entry.getTotalResponseTime());
+        assertEquals(300, entry.getTotalContentLength());
+        assertEquals(5, entry.getMinResponseTime());
+        assertEquals(30, entry.getMaxResponseTime());
+        assertEquals(2, entry.getResponseTimes().get(10L).intValue());
+        assertEquals(1, entry.getResponseTimes().get(5L).intValue());
+    }
 }
@@ -0,0 +1,101 @@
+package com.github.myzhan.locust4j.stats;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author myzhan
+ */
+public class TestStatsHistory {
+
+    private static void writeReport(StatsHistoryWriter writer, long timestamp, long... responseTimes) throws Exception {
+        StatsEntry entry = new StatsEntry("GET /a,b", "http");
+        StatsEntry total = new StatsEntry("Total");
+        entry.reset();
+        total.reset();
+        for (long responseTime : responseTimes) {
+            entry.log(responseTime, 10);
+        }
+        entry.logError("Test Error");
+        total.merge(entry);
+        writer.write(writer.encode(timestamp, 2000, 5, new StatsEntry[] {entry, null}, total));
+    }
+
+    @Test
+    public void TestWriteAndConvertToCsv() throws Exception {
+        File file = File.createTempFile("locust4j", ".history");
+        file.deleteOnExit();
+
+        StatsHistoryWriter writer = new StatsHistoryWriter(file);
+        writeReport(writer, 1000000, 10, 20, 30, 40);
+        writer.close();
+
+        // reopened files are appended to
+        writer = new StatsHistoryWriter(file);
+        writeReport(writer, 1002000, 100, 200);
+        writer.close();
+
+        StringWriter out = new StringWriter();
+        StatsHistoryReader.toCsv(file, out);
+        String[] lines = out.toString().split("\n");
+        assertEquals(5, lines.length);
+        assertTrue(lines[0].startsWith("Timestamp,User Count,Type,Name,Requests/s,Failures/s,50%"));
+        assertEquals("1000,5,http,\"GET /a,b\",2.0,0.5,30,30,40,40,40,40,40,40,40,40,40,4,1,30,25.0,10,40,10.0",
+            lines[1]);
+        assertTrue(lines[2].startsWith("1000,5,,Aggregated,2.0,0.5,30,30,40,"));
+        assertEquals("1002,5,http,\"GET /a,b\",1.0,0.5,200,200,200,200,200,200,200,200,200,200,200,6,2,40,"
+            + "66.66666666666667,10,200,10.0", lines[3]);
+    }
+
+    @Test
+    public void TestTruncatedRecordIsIgnored() throws Exception {
+        File file = File.createTempFile("locust4j", ".history");
+        file.deleteOnExit();
+
+        StatsHistoryWriter writer = new StatsHistoryWriter(file);
+        writeReport(writer, 1000000, 10);
+        writer.close();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 4);
+        raf.close();
+
+        StringWriter out = new StringWriter();
+        StatsHistoryReader.toCsv(file, out);
+        assertEquals(2, out.toString().split("\n").length);
+    }
+
+    @Test
+    public void TestLongNameIsNotTruncated() throws Exception {
+        File file = File.createTempFile("locust4j", ".history");
+        file.deleteOnExit();
+
+        char[] chars = new char[70000];
+        Arrays.fill(chars, 'a');
+        String name = new String(chars);
+        StatsEntry entry = new StatsEntry(name, "http");
+        StatsEntry total = new StatsEntry("Total");
+        entry.reset();
+        total.reset();
+        entry.log(10, 0);
+        total.merge(entry);
+
+        StatsHistoryWriter writer = new StatsHistoryWriter(file);
+        writer.write(writer.encode(1000000, 2000, 1, new StatsEntry[] {entry}, total));
+        writer.close();
+
+        StringWriter out = new StringWriter();
+        StatsHistoryReader.toCsv(file, out);
+        String[] lines = out.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[1].startsWith("1000,1,http," + name + ",0.5,"));
+        assertTrue(lines[2].startsWith("1000,1,,Aggregated,0.5,"));
+    }
+}
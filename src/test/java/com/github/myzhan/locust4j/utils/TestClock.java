@@ -0,0 +1,99 @@
+package com.github.myzhan.locust4j.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author myzhan
+ */
+public class TestClock {
+
+    @Test
+    public void TestCachedClock() throws Exception {
+        CachedClock clock = new CachedClock(1, TimeUnit.MILLISECONDS);
+        long before = System.currentTimeMillis();
+        Thread.sleep(20);
+        long cached = clock.currentTimeMillis();
+        assertTrue(cached >= before);
+        assertTrue(cached <= System.currentTimeMillis());
+
+        clock.stop();
+        Thread.sleep(20);
+        long stopped = clock.currentTimeMillis();
+        Thread.sleep(20);
+        assertEquals(stopped, clock.currentTimeMillis());
+    }
+
+    @Test
+    public void TestSetClockStopsCachedClock() throws Exception {
+        Clock previous = Utils.getClock();
+        CachedClock cached = new CachedClock(1, TimeUnit.MILLISECONDS);
+        try {
+            Utils.setClock(cached);
+            Utils.setClock(cached);
+            Thread.sleep(20);
+            long before = cached.currentTimeMillis();
+            Thread.sleep(20);
+            assertTrue(cached.currentTimeMillis() > before);
+
+            Utils.setClock(new SystemClock());
+            Thread.sleep(20);
+            long stopped = cached.currentTimeMillis();
+            Thread.sleep(20);
+            assertEquals(stopped, cached.currentTimeMillis());
+        } finally {
+            Utils.setClock(previous);
+        }
+    }
+
+    @Test
+    public void TestMonotonicClock() {
+        MonotonicClock clock = new MonotonicClock();
+        long previous = clock.currentTimeMillis();
+        assertTrue(Math.abs(previous - System.currentTimeMillis()) < 1000);
+        for (int i = 0; i < 1000; i++) {
+            long current = clock.currentTimeMillis();
+            assertTrue(current >= previous);
+            previous = current;
+        }
+    }
+
+    @Test
+    public void TestVirtualClock() throws Exception {
+        final VirtualClock clock = new VirtualClock(1000);
+        assertEquals(1000, clock.currentTimeMillis());
+
+        clock.advance(1500, TimeUnit.MILLISECONDS);
+        assertEquals(2500, clock.currentTimeMillis());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(2500), clock.nanoTime());
+
+        final AtomicBoolean wokeUp = new AtomicBoolean(false);
+        Thread sleeper = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    clock.sleep(3000);
+                    wokeUp.set(true);
+                } catch (InterruptedException ex) {
+                    // ignore
+                }
+            }
+        });
+        sleeper.start();
+
+        Thread.sleep(50);
+        clock.advance(2999, TimeUnit.MILLISECONDS);
+        Thread.sleep(50);
+        assertFalse(wokeUp.get());
+
+        clock.advance(1, TimeUnit.MILLISECONDS);
+        sleeper.join(1000);
+        assertTrue(wokeUp.get());
+    }
+}